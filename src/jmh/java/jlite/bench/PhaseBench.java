@@ -0,0 +1,151 @@
+package jlite.bench;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import java_cup.runtime.Symbol;
+import jlite.Env;
+import jlite.StaticChecker;
+import jlite.TypeIndexer;
+import jlite.codegen.IR;
+import jlite.codegen.IRGen;
+import jlite.fp.Result;
+import jlite.gen.ProgramGenerator;
+import jlite.json.JsonWriter;
+import jlite.json.TreeJson;
+import jlite.lexer.Scanner;
+import jlite.parser.Ast;
+import jlite.parser.Source;
+import jlite.parser.Symbols;
+import jlite.parser.parser;
+import jlite.parser.sym;
+import jlite.type_check.Checker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * One benchmark per compiler phase, each fed the output of the previous
+ * phases. {@code classes} scales the input so runs show how every phase
+ * grows with program size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PhaseBench {
+    @Param({"1", "4", "16", "64"})
+    public int classes;
+
+    Source source;
+    Ast.Program program;
+    IR.Program ir;
+    Gson gson;
+
+    @Setup
+    public void setup() throws Exception {
+        final var config = new ProgramGenerator.Config();
+        config.classes = classes;
+        source = Source.of("bench.j", ProgramGenerator.generate(config));
+        program = parser.parse(source);
+        final var generated = IRGen.generateProgram(program);
+        if (generated.isErr())
+            throw generated.err;
+        ir = generated.v;
+        gson = new GsonBuilder().setPrettyPrinting().create();
+    }
+
+    @Benchmark
+    public int scan() throws IOException {
+        final var scanner = new Scanner(source.reader(), new Symbols());
+        int n = 0;
+        for (Symbol s = scanner.next_token(); s.sym != sym.EOF; s = scanner.next_token())
+            n++;
+        return n;
+    }
+
+    @Benchmark
+    public Ast.Program parse() throws Exception {
+        return parser.parse(source);
+    }
+
+    @Benchmark
+    public Env typeIndex() {
+        return TypeIndexer.index(program);
+    }
+
+    @Benchmark
+    public Result<Void> staticCheck() {
+        return StaticChecker.check(program);
+    }
+
+    @Benchmark
+    public Object typeCheck() {
+        return Checker.check(program);
+    }
+
+    @Benchmark
+    public Result<IR.Program> irGen() {
+        return IRGen.generateProgram(program);
+    }
+
+    @Benchmark
+    public long astJson() throws IOException {
+        final var out = new CountingWriter();
+        final var w = new JsonWriter(out, true);
+        new TreeJson(w).write(program);
+        w.flush();
+        return out.count;
+    }
+
+    @Benchmark
+    public long irJson() throws IOException {
+        final var out = new CountingWriter();
+        final var w = new JsonWriter(out, true);
+        new TreeJson(w).write(ir);
+        w.flush();
+        return out.count;
+    }
+
+    // the reflective serializer the driver used before TreeJson, for reference
+    @Benchmark
+    public int irGson() {
+        return gson.toJson(ir).length();
+    }
+
+    static class CountingWriter extends Writer {
+        long count = 0;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(int c) {
+            count++;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -3,35 +3,307 @@
  */
 package jlite;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
 
+import jlite.analysis.Optimizer;
+import jlite.cache.CompileCache;
+import jlite.codegen.IRBinary;
 import jlite.codegen.IRGen;
+import jlite.daemon.Daemon;
+import jlite.fp.Pair;
 import jlite.fp.Result;
+import jlite.incremental.MethodCache;
+import jlite.json.JsonWriter;
+import jlite.json.TreeJson;
 import jlite.parser.Ast;
+import jlite.parser.Source;
 import jlite.parser.parser;
 
 public class App {
-    public static void main(String[] argv) {
-        for (String fileLoc : argv) {
+    public static class Options {
+        public boolean ast = true;
+        public boolean pretty = true;
+        public boolean optimize = false;
+        public boolean optimizeStats = false;
+        public Path irBin = null;
+        public Path incremental = null;
+        public CompileCache cache = null;
+
+        // everything that changes what a compilation prints or writes;
+        // --incremental compilations bypass the cache
+        String key() {
+            return String.format("ast=%b pretty=%b optimize=%b/%b ir-bin=%b",
+                    ast, pretty, optimize, optimizeStats, irBin != null);
+        }
+    }
+
+    public static void main(String[] argv) throws Exception {
+        if (argv.length > 0 && argv[0].startsWith("--serve")) {
+            Daemon.main(argv);
+            return;
+        }
+
+        final var files = new ArrayList<String>();
+        final var options = new Options();
+        String outFile = null;
+        String cacheDir = null;
+        long cacheSize = 256;
+        boolean cacheStats = false;
+        int jobs = 1;
+        for (String arg : argv) {
+            if (arg.equals("--no-ast"))
+                options.ast = false;
+            else if (arg.equals("--compact"))
+                options.pretty = false;
+            else if (arg.equals("-O") || arg.equals("--optimize"))
+                options.optimize = true;
+            else if (arg.equals("--opt-stats"))
+                options.optimize = options.optimizeStats = true;
+            else if (arg.startsWith("--ir-bin="))
+                options.irBin = Paths.get(arg.substring("--ir-bin=".length()));
+            else if (arg.startsWith("--incremental="))
+                options.incremental = Paths.get(arg.substring("--incremental=".length()));
+            else if (arg.startsWith("--cache="))
+                cacheDir = arg.substring("--cache=".length());
+            else if (arg.startsWith("--cache-size="))
+                cacheSize = Long.parseLong(arg.substring("--cache-size=".length()));
+            else if (arg.equals("--cache-stats"))
+                cacheStats = true;
+            else if (arg.startsWith("--out="))
+                outFile = arg.substring("--out=".length());
+            else if (arg.equals("-j") || arg.equals("--parallel"))
+                jobs = Runtime.getRuntime().availableProcessors();
+            else if (arg.startsWith("-j"))
+                jobs = Integer.parseInt(arg.substring(2));
+            else if (arg.startsWith("--parallel="))
+                jobs = Integer.parseInt(arg.substring("--parallel=".length()));
+            else
+                files.add(arg);
+        }
+
+        if (cacheDir != null)
+            options.cache = new CompileCache(Paths.get(cacheDir), cacheSize << 20);
+
+        final var out = outFile == null
+                ? System.out
+                : new PrintStream(new BufferedOutputStream(new FileOutputStream(outFile), 1 << 16), false);
+        try {
+            // cached compilations are replayed from bytes, which compileAll does
+            if ((jobs <= 1 || files.size() <= 1) && options.cache == null) {
+                for (String fileLoc : files)
+                    compile(fileLoc, options, out, System.err);
+            } else {
+                compileAll(files, options, Math.max(1, jobs), out);
+            }
+        } finally {
+            out.flush();
+            if (out != System.out)
+                out.close();
+        }
+        if (cacheStats && options.cache != null)
+            System.err.println(options.cache);
+    }
+
+    static void compileAll(List<String> files, Options options, int jobs, PrintStream out) {
+        final var stdout = System.out;
+        final var stderr = System.err;
+        final var pool = new ForkJoinPool(jobs);
+        routeStdio();
+        try {
+            final List<ForkJoinTask<Output>> tasks = files.stream()
+                    .map(fileLoc -> pool.submit(() -> Output.of(fileLoc, options)))
+                    .collect(Collectors.toList());
+            // tasks finish in any order, but are flushed in argv order
+            for (ForkJoinTask<Output> task : tasks) {
+                final var output = task.join();
+                out.write(output.out, 0, output.out.length);
+                out.flush();
+                stderr.write(output.err, 0, output.err.length);
+                stderr.flush();
+            }
+        } finally {
+            pool.shutdown();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+    }
+
+    // the parser reports syntax errors straight to System.out/err,
+    // so those are routed to whichever file the current thread compiles
+    public static void routeStdio() {
+        if (!(System.out instanceof RoutedPrintStream))
+            System.setOut(new RoutedPrintStream(new Routed(OUT, System.out)));
+        if (!(System.err instanceof RoutedPrintStream))
+            System.setErr(new RoutedPrintStream(new Routed(ERR, System.err)));
+    }
+
+    public static void compile(String fileLoc, Options options, PrintStream out, PrintStream err) {
+        compile(fileLoc, null, options, out, err);
+    }
+
+    // `source` holds the file's bytes if the caller already read them; returns
+    // the binary IR written for --ir-bin, if any
+    static byte[] compile(String fileLoc, byte[] source, Options options, PrintStream out, PrintStream err) {
+        byte[] irBytes = null;
+        try {
+            final var json = new JsonWriter(
+                    new BufferedWriter(new OutputStreamWriter(out, Charset.defaultCharset()), 1 << 16),
+                    options.pretty
+            );
+            final var tree = new TreeJson(json);
+
+            Ast.Program program = source != null
+                    ? parser.parse(Source.decode(fileLoc, source))
+                    : parser.parse(fileLoc);
+            if (options.ast) {
+                tree.write(program);
+                json.flush();
+                out.println();
+            }
+
+            Result<Void> s = StaticChecker.check(program);
+            if (s.isErr()) {
+                out.println("error: ");
+                out.println(s.err.toString());
+            }
+
+            var ir = options.incremental != null
+                    ? new MethodCache(options.incremental).generate(program, err)
+                    : IRGen.generateProgram(program);
+            if (options.optimize && !ir.isErr())
+                ir = Result.of(options.optimizeStats ? Optimizer.optimize(ir.v, err) : Optimizer.optimize(ir.v));
+            if (ir.isErr())
+                out.println(ir.err.toString());
+            else if (options.irBin != null)
+                Files.write(irBinPath(fileLoc, options), irBytes = IRBinary.write(ir.v));
+            tree.write(ir.v);
+            json.flush();
+            out.println();
+        } catch (Exception e) {
+            e.printStackTrace(err);
+        }
+        return irBytes;
+    }
+
+    static Path irBinPath(String fileLoc, Options options) {
+        return options.irBin.resolve(Paths.get(fileLoc).getFileName() + ".jir");
+    }
+
+    public static class Output {
+        public final byte[] out;
+        public final byte[] err;
+
+        private Output(byte[] out, byte[] err) {
+            this.out = out;
+            this.err = err;
+        }
+
+        public static Output of(String fileLoc, Options options) {
+            // a replayed entry would skip filling the method cache and
+            // repeat the reuse counts of the run that stored it
+            if (options.cache == null || options.incremental != null)
+                return compiled(fileLoc, null, options).first;
+
+            final byte[] source;
+            try {
+                source = Files.readAllBytes(Paths.get(fileLoc));
+            } catch (IOException e) {
+                // let the compiler report it the usual way
+                return compiled(fileLoc, null, options).first;
+            }
+            final var key = options.cache.key(fileLoc, options.key(), source);
+            final var hit = options.cache.get(key);
             try {
-                Gson gson = new GsonBuilder()
-                        .setPrettyPrinting()
-                        .create();
-                Ast.Program program = parser.parse(fileLoc);
-                System.out.println(gson.toJson(program));
-
-                Result<Void> s = StaticChecker.check(program);
-                if (s.isErr()) {
-                    System.out.println("error: ");
-                    System.out.println(s.err.toString());
+                if (hit != null) {
+                    if (options.irBin != null && hit.ir.length > 0)
+                        Files.write(irBinPath(fileLoc, options), hit.ir);
+                    return new Output(hit.out, hit.err);
                 }
+            } catch (IOException e) {
+                // fall back to compiling
+            }
 
-                final var ir = IRGen.generateProgram(program);
-                System.out.println(gson.toJson(ir));
-            } catch (Exception e) {
-                e.printStackTrace();
+            final var output = compiled(fileLoc, source, options);
+            final var ir = output.second != null ? output.second : new byte[0];
+            try {
+                options.cache.put(key, new CompileCache.Entry(output.first.out, output.first.err, ir));
+            } catch (IOException e) {
+                // the cache is best effort
             }
+            return output.first;
+        }
+
+        static Pair<Output, byte[]> compiled(String fileLoc, byte[] source, Options options) {
+            final var out = new ByteArrayOutputStream();
+            final var err = new ByteArrayOutputStream();
+            // a worker may run another file while joining, so restore on exit
+            final var prevOut = OUT.get();
+            final var prevErr = ERR.get();
+            OUT.set(out);
+            ERR.set(err);
+            final byte[] ir;
+            try (var o = new PrintStream(out, false); var e = new PrintStream(err, false)) {
+                ir = compile(fileLoc, source, options, o, e);
+            } finally {
+                OUT.set(prevOut);
+                ERR.set(prevErr);
+            }
+            return new Pair<>(new Output(out.toByteArray(), err.toByteArray()), ir);
+        }
+    }
+
+    static final ThreadLocal<OutputStream> OUT = new ThreadLocal<>();
+    static final ThreadLocal<OutputStream> ERR = new ThreadLocal<>();
+
+    static class RoutedPrintStream extends PrintStream {
+        RoutedPrintStream(Routed out) {
+            super(out, true);
+        }
+    }
+
+    static class Routed extends OutputStream {
+        final ThreadLocal<OutputStream> target;
+        final OutputStream fallback;
+
+        Routed(ThreadLocal<OutputStream> target, OutputStream fallback) {
+            this.target = target;
+            this.fallback = fallback;
+        }
+
+        OutputStream current() {
+            final var t = target.get();
+            return t != null ? t : fallback;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            current().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            current().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            current().flush();
         }
     }
 }
@@ -1,50 +1,117 @@
 package jlite;
 
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
-
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Types of the program plus a chain of scopes.
+ *
+ * Every class and method gets a dense id in declaration order, the four
+ * builtin types first and {@code Main} next, and every field and method a
+ * slot within its class, also in declaration order. IRGen emits
+ * {@code IR.Data} fields and {@code IR.Program} methods in the same order,
+ * so backends can use the slots as field offsets and the ids as method
+ * indices; decl {@code i} is class {@code BUILTINS + i}.
+ *
+ * Entering a scope only links
+ * the new bindings in front of the current chain, so the cost is the size
+ * of the new bindings; lookups walk the chain from the innermost scope,
+ * which is a handful of links (class, method, body, blocks).
+ */
 public class Env {
-    public final Map<String, Type> types;
-    public final ImmutableMap<String, ClassType> vars;
-    public final ImmutableMap<String, MethodType> methods;
+    public static final int VOID = 0;
+    public static final int INT = 1;
+    public static final int BOOL = 2;
+    public static final int STRING = 3;
+    public static final int BUILTINS = 4;
+
+    // class types by name, and class and method types by id
+    public final Map<String, ClassType> types;
+    public final List<ClassType> classes;
+    public final List<MethodType> methods;
+    private final Scope scope;
 
     public Env() {
         this.types = new HashMap<>();
-        this.vars = ImmutableMap.of();
-        this.methods = ImmutableMap.of();
+        this.classes = new ArrayList<>();
+        this.methods = new ArrayList<>();
+        this.scope = null;
+        for (String name : new String[]{"Void", "Int", "Bool", "String"})
+            newClass(name);
+    }
+
+    private Env(Env e, Scope scope) {
+        this.types = e.types;
+        this.classes = e.classes;
+        this.methods = e.methods;
+        this.scope = scope;
     }
 
-    private Env(Map<String, Type> types, ImmutableMap<String, ClassType> vars, ImmutableMap<String, MethodType> methods) {
-        this.types = types;
-        this.vars = vars;
-        this.methods = methods;
+    public ClassType newClass(String name) {
+        final var c = new ClassType(classes.size(), name);
+        classes.add(c);
+        types.put(name, c);
+        return c;
     }
 
+    public MethodType newMethod(ClassType owner, String id, ClassType ret, List<ClassType> params) {
+        final var m = new MethodType(methods.size(), owner.methodSlots.size(),
+                String.format("%s::%s", owner.name, id), owner, ret, params);
+        methods.add(m);
+        owner.methods.put(id, m);
+        owner.methodSlots.add(m);
+        return m;
+    }
+
+    // the maps are shared, not copied, and must not change afterwards
     public Env update(Map<String, ClassType> vars, Map<String, MethodType> methods) {
-        final var updVars = new ImmutableList.Builder<Map.Entry<String, ClassType>>()
-                .addAll(this.vars.entrySet().asList())
-                .addAll(new ArrayList<>(vars.entrySet()))
-                .build()
-                .stream()
-                .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> b));
-        final var updMethods = new ImmutableList.Builder<Map.Entry<String, MethodType>>()
-                .addAll(this.methods.entrySet().asList())
-                .addAll(new ArrayList<>(methods.entrySet()))
-                .build()
-                .stream()
-                .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> b));
-        return new Env(types, updVars, updMethods);
+        return new Env(this, new Scope(vars, methods, scope));
+    }
+
+    // a nested block that only declares variables
+    public Env block(Map<String, ClassType> vars) {
+        return update(vars, Map.of());
+    }
+
+    // variables shadow methods of the same name in every enclosing scope
+    public ClassType var(String id) {
+        for (var s = scope; s != null; s = s.parent) {
+            final var t = s.vars.get(id);
+            if (t != null)
+                return t;
+        }
+        return null;
+    }
+
+    public MethodType method(String id) {
+        for (var s = scope; s != null; s = s.parent) {
+            final var t = s.methods.get(id);
+            if (t != null)
+                return t;
+        }
+        return null;
+    }
+
+    private static class Scope {
+        final Map<String, ClassType> vars;
+        final Map<String, MethodType> methods;
+        final Scope parent;
+
+        Scope(Map<String, ClassType> vars, Map<String, MethodType> methods, Scope parent) {
+            this.vars = vars;
+            this.methods = methods;
+            this.parent = parent;
+        }
     }
 
     public static abstract class Type {
+        public final int id;
         public final String name;
 
-        protected Type(String name) {
+        protected Type(int id, String name) {
+            this.id = id;
             this.name = name;
         }
 
@@ -56,11 +123,34 @@ public class Env {
     public static class ClassType extends Type {
         public final Map<String, ClassType> fields;
         public final Map<String, MethodType> methods;
-
-        public ClassType(String name) {
-            super(name);
+        // by slot
+        public final List<String> fieldIds;
+        public final List<ClassType> fieldTypes;
+        public final List<MethodType> methodSlots;
+        private final Map<String, Integer> fieldSlots;
+
+        ClassType(int id, String name) {
+            super(id, name);
             this.fields = new HashMap<>();
             this.methods = new HashMap<>();
+            this.fieldIds = new ArrayList<>();
+            this.fieldTypes = new ArrayList<>();
+            this.methodSlots = new ArrayList<>();
+            this.fieldSlots = new HashMap<>();
+        }
+
+        public int addField(String id, ClassType type) {
+            final int slot = fieldIds.size();
+            fieldIds.add(id);
+            fieldTypes.add(type);
+            fields.put(id, type);
+            fieldSlots.put(id, slot);
+            return slot;
+        }
+
+        // -1 if there is no such field
+        public int fieldSlot(String id) {
+            return fieldSlots.getOrDefault(id, -1);
         }
 
         @Override
@@ -75,11 +165,15 @@ public class Env {
     }
 
     public static class MethodType extends Type {
+        public final int slot;
+        public final ClassType owner;
         public final ClassType ret;
         public final List<ClassType> params;
 
-        public MethodType(String name, ClassType ret, List<ClassType> params) {
-            super(name);
+        MethodType(int id, int slot, String name, ClassType owner, ClassType ret, List<ClassType> params) {
+            super(id, name);
+            this.slot = slot;
+            this.owner = owner;
             this.ret = ret;
             this.params = params;
         }
@@ -2,31 +2,33 @@ package jlite;
 
 import com.google.common.collect.ImmutableList;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import jlite.fp.MultiError;
 import jlite.fp.Result;
 import jlite.parser.Ast;
 
 public class StaticChecker {
+    // classes are independent, so their members and params are checked in
+    // parallel; errors still come out in source order
     public static Result<Void> check(Ast.Program p) {
         final var classes = new ImmutableList.Builder<Ast.Cls>()
                 .add(p.main).addAll(p.classes).build();
 
-        final var nonUniq = classes.stream()
-                .filter(a -> classes.stream()
-                        .filter(b -> a.name.equals(b.name))
-                        .count() != 1
-                )
-                .collect(Collectors.toList());
-
+        final var errs = new ArrayList<Error>();
+        final var nonUniq = duplicates(classes, c -> c.name);
         if (nonUniq.size() != 0)
-            return Result.err(new DuplicateClassError(nonUniq));
+            errs.add(new DuplicateClassError(nonUniq));
 
-        return classes.stream()
+        classes.parallelStream()
                 .map(StaticChecker::check)
-                .filter(Result::isErr)
-                .findAny().orElse(Result.of(null));
+                .collect(Collectors.toList())
+                .forEach(r -> collect(errs, r));
+        return result(errs);
     }
 
     public static Result<Void> check(Ast.Cls c) {
@@ -35,35 +37,45 @@ public class StaticChecker {
                 .addAll(c.methods)
                 .build();
 
-        final var nonUniq = members.stream()
-                .filter(a -> members.stream()
-                        .filter(b -> a.id.id.equals(b.id.id))
-                        .count() != 1
-                )
-                .collect(Collectors.toList());
-
+        final var errs = new ArrayList<Error>();
+        final var nonUniq = duplicates(members, m -> m.id.id);
         if (nonUniq.size() != 0)
-            return Result.err(new DuplicateMemberError(nonUniq));
+            errs.add(new DuplicateMemberError(nonUniq));
 
-        return c.methods.stream()
-                .map(StaticChecker::check)
-                .filter(Result::isErr)
-                .findAny().orElse(Result.of(null));
+        c.methods.forEach(m -> collect(errs, check(m)));
+        return result(errs);
     }
 
     public static Result<Void> check(Ast.Method m) {
-        final var nonUniq = m.params.stream()
-                .filter(a -> m.params.stream()
-                        .filter(b -> a.id.id.equals(b.id.id))
-                        .count() != 1
-                )
-                .collect(Collectors.toList());
-
-        final var vars = m.body.vars;
+        final var nonUniq = duplicates(m.params, p -> p.id.id);
         return nonUniq.size() != 0
                 ? Result.err(new DuplicateParamError(nonUniq))
                 : Result.of(null);
     }
+
+    // every element whose key occurs more than once, in their original order
+    static <T> List<T> duplicates(List<T> xs, Function<T, String> key) {
+        final var counts = new HashMap<String, Integer>(xs.size() * 2);
+        xs.forEach(x -> counts.merge(key.apply(x), 1, Integer::sum));
+        if (counts.size() == xs.size())
+            return List.of();
+        return xs.stream()
+                .filter(x -> counts.get(key.apply(x)) != 1)
+                .collect(Collectors.toList());
+    }
+
+    static void collect(List<Error> errs, Result<Void> r) {
+        if (r.err instanceof MultiError)
+            errs.addAll(((MultiError) r.err).errs);
+        else if (r.isErr())
+            errs.add(r.err);
+    }
+
+    static Result<Void> result(List<Error> errs) {
+        if (errs.isEmpty())
+            return Result.of(null);
+        return Result.err(errs.size() == 1 ? errs.get(0) : MultiError.join(errs));
+    }
 }
 
 class DuplicateClassError extends Error {
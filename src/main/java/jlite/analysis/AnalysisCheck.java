@@ -0,0 +1,158 @@
+package jlite.analysis;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+import jlite.codegen.IR;
+import jlite.codegen.IRGen;
+import jlite.fp.Result;
+import jlite.gen.ProgramGenerator;
+import jlite.interp.Interpreter;
+import jlite.parser.Source;
+import jlite.parser.parser;
+
+/**
+ * Runs every program through the {@link Optimizer} and through each pass
+ * on its own, and fails unless the {@link Interpreter} prints the same
+ * output and fails the same way for every result as for the original.
+ * The SSA invariants are checked on the way, and SSA is also left through
+ * phi copies alone. A file's stdin is read from {@code <file>.in} if there
+ * is one; {@code --generated=N} also checks N generated programs.
+ *
+ * <pre>
+ *   java -cp ... jlite.analysis.AnalysisCheck [--generated=N] test/pass/*.j
+ * </pre>
+ */
+public class AnalysisCheck {
+    static final Map<String, UnaryOperator<IR.Method>> PASSES = new LinkedHashMap<>();
+
+    static {
+        PASSES.put("phi copies", m -> {
+            final var ssa = Ssa.of(m);
+            ssa.verify();
+            ssa.conventional = false;
+            return ssa.toMethod();
+        });
+        PASSES.put("constants", inSsa(ConstantPropagation::apply));
+        PASSES.put("copies", inSsa(CopyPropagation::apply));
+        PASSES.put("dead code", inSsa(DeadCode::apply));
+        PASSES.put("coalescing", Coalescing::apply);
+        PASSES.put("jumps", JumpThreading::apply);
+        PASSES.put("all", Optimizer::optimize);
+    }
+
+    static UnaryOperator<IR.Method> inSsa(Consumer<Ssa> pass) {
+        return m -> {
+            final var ssa = Ssa.of(m);
+            pass.accept(ssa);
+            ssa.verify();
+            return ssa.toMethod();
+        };
+    }
+
+    static IR.Program apply(UnaryOperator<IR.Method> pass, IR.Program p) {
+        return new IR.Program(p.decls, p.methods.stream().map(pass).collect(Collectors.toList()));
+    }
+
+    static int size(IR.Program p) {
+        return p.methods.stream().mapToInt(m -> m.body.size()).sum();
+    }
+
+    static class Run {
+        final byte[] out;
+        String error;
+        final double ms;
+
+        Run(IR.Program p, String input) {
+            final var bytes = new ByteArrayOutputStream();
+            final var out = new PrintStream(bytes, false);
+            final long start = System.nanoTime();
+            try {
+                new Interpreter(p, new BufferedReader(new StringReader(input)), out).run();
+            } catch (Interpreter.RuntimeError e) {
+                error = e.getMessage();
+            }
+            ms = (System.nanoTime() - start) / 1e6;
+            out.flush();
+            this.out = bytes.toByteArray();
+        }
+
+        boolean agrees(Run o) {
+            return Arrays.equals(out, o.out) && (error == null) == (o.error == null);
+        }
+    }
+
+    static boolean check(String name, IR.Program p, String input) {
+        final var before = new Run(p, input);
+        final var failures = new ArrayList<String>();
+        IR.Program optimized = p;
+        Run after = before;
+        for (final var pass : PASSES.entrySet()) {
+            try {
+                final var q = apply(pass.getValue(), p);
+                final var run = new Run(q, input);
+                if (!before.agrees(run))
+                    failures.add(String.format("%s: error %s instead of %s", pass.getKey(), run.error, before.error));
+                optimized = q;
+                after = run;
+            } catch (RuntimeException e) {
+                failures.add(pass.getKey() + ": " + e);
+            }
+        }
+        System.out.println(String.format("%-24s %-4s %10d %10d %10.1f %10.1f", name, failures.isEmpty() ? "ok" : "DIFF",
+                size(p), size(optimized), before.ms, after.ms));
+        for (final var f : failures)
+            System.out.println("  " + f);
+        return failures.isEmpty();
+    }
+
+    public static void main(String[] argv) throws Exception {
+        int generated = 0;
+        boolean ok = true;
+        System.out.println(String.format("%-24s %-4s %10s %10s %10s %10s",
+                "program", "", "stmts", "optimized", "ms", "opt ms"));
+        for (String arg : argv) {
+            if (arg.startsWith("--generated=")) {
+                generated = Integer.parseInt(arg.substring("--generated=".length()));
+                continue;
+            }
+            final Result<IR.Program> ir;
+            try {
+                ir = IRGen.generateProgram(parser.parse(arg));
+            } catch (Exception e) {
+                System.out.println(String.format("%-24s skipped: %s", arg, e));
+                continue;
+            }
+            if (ir.isErr()) {
+                System.out.println(String.format("%-24s skipped: %s", arg, ir.err));
+                continue;
+            }
+            final var in = Paths.get(arg + ".in");
+            ok &= check(arg, ir.v, Files.exists(in) ? Files.readString(in) : "");
+        }
+        for (int seed = 1; seed <= generated; seed++) {
+            final var c = new ProgramGenerator.Config();
+            c.seed = seed;
+            final var ir = IRGen.generateProgram(parser.parse(Source.of("gen" + seed, ProgramGenerator.generate(c))));
+            if (ir.isErr()) {
+                System.out.println(String.format("gen%-21d invalid: %s", seed, ir.err));
+                ok = false;
+                continue;
+            }
+            ok &= check("gen" + seed, ir.v, "");
+        }
+        if (!ok)
+            System.exit(1);
+    }
+}
@@ -0,0 +1,259 @@
+package jlite.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jlite.codegen.IR;
+
+/**
+ * The basic blocks of one {@link IR.Method} and the edges between them.
+ * Blocks are kept in their original layout order, entry first; a block's
+ * id is its index in {@link #blocks}. Passes may rewrite a block's
+ * statements and jumps in place and then {@link #toMethod()} back out.
+ */
+public class Cfg {
+    public static class Block {
+        public final int id;
+        // set if something jumps here
+        public String label;
+        // straight-line statements; no labels, declarations or jumps
+        public final List<IR.Stmt> stmts = new ArrayList<>();
+        // Goto, a conditional jump or Return, or null if the block just falls through
+        public IR.Stmt end;
+        // where control goes when `end` is null or a conditional jump is not taken; -1 leaves the method
+        public int next = -1;
+
+        Block(int id) {
+            this.id = id;
+        }
+
+        // the statements followed by `end`, if any
+        public List<IR.Stmt> all() {
+            if (end == null)
+                return stmts;
+            final var all = new ArrayList<>(stmts);
+            all.add(end);
+            return all;
+        }
+    }
+
+    public final IR.Method method;
+    public final List<IR.Var> vars;
+    public final List<Block> blocks;
+    private final Map<String, Integer> labels = new HashMap<>();
+
+    private Cfg(IR.Method method, List<IR.Var> vars, List<Block> blocks) {
+        this.method = method;
+        this.vars = vars;
+        this.blocks = blocks;
+        for (final var b : blocks)
+            if (b.label != null)
+                labels.put(b.label, b.id);
+    }
+
+    public static Cfg of(IR.Method m) {
+        final var vars = new ArrayList<IR.Var>();
+        final var blocks = new ArrayList<Block>();
+        Block b = new Block(0);
+        blocks.add(b);
+        for (final var s : m.body) {
+            if (s instanceof IR.Var) {
+                vars.add((IR.Var) s);
+                continue;
+            }
+            if (s instanceof IR.Label) {
+                // the entry block never has a label, so nothing jumps back to it
+                if (b.id == 0 || b.label != null || !b.stmts.isEmpty() || b.end != null) {
+                    b = new Block(blocks.size());
+                    blocks.add(b);
+                }
+                b.label = ((IR.Label) s).name;
+                continue;
+            }
+            if (b.end != null) {
+                b = new Block(blocks.size());
+                blocks.add(b);
+            }
+            if (s instanceof IR.Goto || s instanceof IR.Return || conditional(s))
+                b.end = s;
+            else
+                b.stmts.add(s);
+        }
+        for (int i = 0; i + 1 < blocks.size(); i++) {
+            final var end = blocks.get(i).end;
+            if (end == null || conditional(end))
+                blocks.get(i).next = i + 1;
+        }
+        return new Cfg(m, vars, blocks);
+    }
+
+    public int target(String label) {
+        final Integer id = labels.get(label);
+        if (id == null)
+            throw new IllegalArgumentException("no label " + label + " in " + method.name);
+        return id;
+    }
+
+    public int[] succs(Block b) {
+        if (b.end instanceof IR.Return)
+            return new int[0];
+        if (b.end instanceof IR.Goto)
+            return new int[] { target(((IR.Goto) b.end).label) };
+        if (conditional(b.end)) {
+            final int t = target(condTarget(b.end));
+            if (b.next < 0 || b.next == t)
+                return new int[] { t };
+            return new int[] { t, b.next };
+        }
+        return b.next < 0 ? new int[0] : new int[] { b.next };
+    }
+
+    public int[][] preds() {
+        final var count = new int[blocks.size()];
+        final var succs = new int[blocks.size()][];
+        for (final var b : blocks) {
+            succs[b.id] = succs(b);
+            for (int s : succs[b.id])
+                count[s]++;
+        }
+        final var preds = new int[blocks.size()][];
+        for (int i = 0; i < preds.length; i++)
+            preds[i] = new int[count[i]];
+        Arrays.fill(count, 0);
+        for (final var b : blocks)
+            for (int s : succs[b.id])
+                preds[s][count[s]++] = b.id;
+        return preds;
+    }
+
+    // blocks reachable from the entry in reverse postorder
+    public int[] reversePostorder() {
+        final int n = blocks.size();
+        final var order = new int[n];
+        int at = n;
+        final var seen = new boolean[n];
+        final var stack = new int[n];
+        final var edge = new int[n];
+        final var succs = new int[n][];
+        int top = 0;
+        stack[top++] = 0;
+        seen[0] = true;
+        succs[0] = succs(blocks.get(0));
+        while (top > 0) {
+            final int b = stack[top - 1];
+            if (edge[b] < succs[b].length) {
+                final int s = succs[b][edge[b]++];
+                if (!seen[s]) {
+                    seen[s] = true;
+                    succs[s] = succs(blocks.get(s));
+                    stack[top++] = s;
+                }
+            } else {
+                order[--at] = b;
+                top--;
+            }
+        }
+        return Arrays.copyOfRange(order, at, n);
+    }
+
+    public boolean[] reachable() {
+        final var r = new boolean[blocks.size()];
+        for (int b : reversePostorder())
+            r[b] = true;
+        return r;
+    }
+
+    /**
+     * Lays the reachable blocks out in their original order. A jump is
+     * added wherever a block's fall-through successor no longer follows it,
+     * and dropped where its target does.
+     */
+    public IR.Method toMethod() {
+        final var reachable = reachable();
+        final var layout = new ArrayList<Block>();
+        for (final var b : blocks)
+            if (reachable[b.id])
+                layout.add(b);
+
+        final var ends = new IR.Stmt[layout.size()];
+        final var jumpedTo = new boolean[blocks.size()];
+        boolean exits = false;
+        for (int i = 0; i < layout.size(); i++) {
+            final var b = layout.get(i);
+            final int follows = i + 1 < layout.size() ? layout.get(i + 1).id : -1;
+            ends[i] = b.end;
+            if (b.end instanceof IR.Goto) {
+                final int t = target(((IR.Goto) b.end).label);
+                if (t == follows)
+                    ends[i] = null;
+                else
+                    jumpedTo[t] = true;
+            }
+            if (conditional(b.end))
+                jumpedTo[target(condTarget(b.end))] = true;
+            if (falls(b) && b.next != follows) {
+                if (b.next < 0)
+                    exits = true;
+                else
+                    jumpedTo[b.next] = true;
+            }
+        }
+
+        final var body = new ArrayList<IR.Stmt>(vars);
+        final String exit = "__b" + blocks.size();
+        for (int i = 0; i < layout.size(); i++) {
+            final var b = layout.get(i);
+            if (jumpedTo[b.id])
+                body.add(new IR.Label(label(b)));
+            body.addAll(b.stmts);
+            if (ends[i] != null)
+                body.add(ends[i]);
+            final int follows = i + 1 < layout.size() ? layout.get(i + 1).id : -1;
+            if (falls(b) && b.next != follows)
+                body.add(new IR.Goto(b.next < 0 ? exit : label(blocks.get(b.next))));
+        }
+        if (exits)
+            body.add(new IR.Label(exit));
+        return new IR.Method(method.name, method.ret, method.params, body);
+    }
+
+    private static boolean falls(Block b) {
+        return b.end == null || conditional(b.end);
+    }
+
+    // whether `s` is a jump that may fall through instead
+    public static boolean conditional(IR.Stmt s) {
+        return s instanceof IR.CondGoto || s instanceof IR.IfFalseGoto || s instanceof IR.CmpGoto;
+    }
+
+    // the label a conditional jump goes to when taken
+    public static String condTarget(IR.Stmt s) {
+        if (s instanceof IR.CondGoto)
+            return ((IR.CondGoto) s).target;
+        if (s instanceof IR.IfFalseGoto)
+            return ((IR.IfFalseGoto) s).target;
+        return ((IR.CmpGoto) s).target;
+    }
+
+    // the same conditional jump, to `label` instead
+    public static IR.Stmt retarget(IR.Stmt s, String label) {
+        if (s instanceof IR.CondGoto)
+            return new IR.CondGoto(((IR.CondGoto) s).cond, label);
+        if (s instanceof IR.IfFalseGoto)
+            return new IR.IfFalseGoto(((IR.IfFalseGoto) s).cond, label);
+        final var c = (IR.CmpGoto) s;
+        return new IR.CmpGoto(c.op, c.a, c.b, label);
+    }
+
+    // the block's label, naming it first if it has none
+    public String label(Block b) {
+        if (b.label == null) {
+            b.label = "__b" + b.id;
+            labels.put(b.label, b.id);
+        }
+        return b.label;
+    }
+}
@@ -0,0 +1,207 @@
+package jlite.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import jlite.codegen.IR;
+
+/**
+ * Shrinks a flat method's frame. Two variables of the same type that are
+ * never live at the same time share a name: first the two sides of each
+ * copy, which makes the copy vanish, then greedily any others, in
+ * declaration order. Parameters keep their names but other variables may
+ * reuse them once they are dead. Declarations nothing reads or writes
+ * any more are dropped.
+ *
+ * <p>A variable read before it is assigned holds its zero value, so it
+ * interferes with every parameter and with every other variable live on
+ * entry.
+ */
+public class Coalescing {
+    private final Cfg cfg;
+    private final Liveness live;
+    private final IntSet[] adj;
+    // union-find over variables; the root is a parameter if the class has one
+    private final int[] parent;
+    private final boolean[] hasParam;
+
+    private Coalescing(IR.Method m) {
+        cfg = Cfg.of(m);
+        live = Liveness.of(cfg);
+        final int n = live.names.size();
+        adj = new IntSet[n];
+        for (int v = 0; v < n; v++)
+            adj[v] = new IntSet();
+        parent = new int[n];
+        hasParam = new boolean[n];
+        for (int v = 0; v < n; v++) {
+            parent[v] = v;
+            hasParam[v] = live.isParam(v);
+        }
+    }
+
+    public static IR.Method apply(IR.Method m) {
+        final var c = new Coalescing(m);
+        c.interfere();
+        c.coalesce();
+        return c.rename(c.color());
+    }
+
+    private void edge(int a, int b) {
+        if (a != b) {
+            adj[a].add(b);
+            adj[b].add(a);
+        }
+    }
+
+    private void interfere() {
+        final int n = live.names.size();
+        // a sparse set of the variables live at the current point
+        final var dense = new int[n];
+        final var sparse = new int[n];
+        for (int b : cfg.reversePostorder()) {
+            int size = 0;
+            for (int v : live.liveOut(b)) {
+                sparse[v] = size;
+                dense[size++] = v;
+            }
+            final var stmts = cfg.blocks.get(b).all();
+            for (int i = stmts.size() - 1; i >= 0; i--) {
+                final var s = stmts.get(i);
+                final int d = live.id(Operands.def(s));
+                if (d >= 0) {
+                    final int src = s instanceof IR.Assignment ? live.id(((IR.Assignment) s).rhs) : -1;
+                    for (int k = 0; k < size; k++)
+                        if (dense[k] != src)
+                            edge(d, dense[k]);
+                    if (sparse[d] < size && dense[sparse[d]] == d) {
+                        final int last = dense[--size];
+                        dense[sparse[d]] = last;
+                        sparse[last] = sparse[d];
+                    }
+                }
+                for (final var u : Operands.uses(s)) {
+                    final int v = live.id(u);
+                    if (v >= 0 && !(sparse[v] < size && dense[sparse[v]] == v)) {
+                        sparse[v] = size;
+                        dense[size++] = v;
+                    }
+                }
+            }
+        }
+        final var entry = live.liveIn(0);
+        for (int p = 0; p < cfg.method.params.size(); p++)
+            for (int v : entry)
+                edge(p, v);
+        for (int v : entry)
+            for (int w : entry)
+                if (!live.isParam(v) && !live.isParam(w))
+                    edge(v, w);
+    }
+
+    private int find(int v) {
+        while (parent[v] != v)
+            v = parent[v] = parent[parent[v]];
+        return v;
+    }
+
+    // merge the two sides of every copy that can share a name
+    private void coalesce() {
+        for (int b : cfg.reversePostorder())
+            for (final var s : cfg.blocks.get(b).stmts) {
+                if (!(s instanceof IR.Assignment))
+                    continue;
+                final int lhs = live.id(((IR.Assignment) s).lhs);
+                final int rhs = live.id(((IR.Assignment) s).rhs);
+                if (lhs < 0 || rhs < 0)
+                    continue;
+                int x = find(lhs);
+                int y = find(rhs);
+                if (x == y || (hasParam[x] && hasParam[y]) || adj[x].contains(y)
+                        || !live.types.get(x).equals(live.types.get(y)))
+                    continue;
+                if (hasParam[y]) {
+                    final int t = x;
+                    x = y;
+                    y = t;
+                }
+                parent[y] = x;
+                hasParam[x] |= hasParam[y];
+                final var ys = adj[y];
+                for (int i = 0; i < ys.capacity(); i++) {
+                    final int w = ys.at(i);
+                    if (w < 0)
+                        continue;
+                    adj[w].remove(y);
+                    edge(x, w);
+                }
+            }
+    }
+
+    // the variable whose name each class of copies ends up with
+    private int[] color() {
+        final int n = live.names.size();
+        final var color = new int[n];
+        Arrays.fill(color, -1);
+        final Map<String, List<Integer>> byType = new HashMap<>();
+        for (int v = 0; v < n; v++)
+            if (find(v) == v && hasParam[v]) {
+                color[v] = v;
+                byType.computeIfAbsent(live.types.get(v), k -> new ArrayList<>()).add(v);
+            }
+        for (int v = 0; v < n; v++) {
+            if (find(v) != v || color[v] >= 0)
+                continue;
+            final var neighbours = adj[v];
+            final var mine = new IntSet();
+            for (int i = 0; i < neighbours.capacity(); i++) {
+                final int w = neighbours.at(i);
+                if (w >= 0 && color[w] >= 0)
+                    mine.add(color[w]);
+            }
+            final var candidates = byType.computeIfAbsent(live.types.get(v), k -> new ArrayList<>());
+            for (int c : candidates)
+                if (!mine.contains(c)) {
+                    color[v] = c;
+                    break;
+                }
+            if (color[v] < 0) {
+                color[v] = v;
+                candidates.add(v);
+            }
+        }
+        for (int v = 0; v < n; v++)
+            color[v] = color[find(v)];
+        return color;
+    }
+
+    private IR.Method rename(int[] color) {
+        final var used = new boolean[live.names.size()];
+        final UnaryOperator<String> name = v -> {
+            final int id = live.id(v);
+            if (id < 0)
+                return v;
+            used[color[id]] = true;
+            return live.names.get(color[id]);
+        };
+        for (int b : cfg.reversePostorder()) {
+            final var block = cfg.blocks.get(b);
+            block.stmts.replaceAll(s -> Operands.rename(s, name, name));
+            block.stmts.removeIf(s -> s instanceof IR.Assignment
+                    && ((IR.Assignment) s).lhs.equals(((IR.Assignment) s).rhs));
+            if (block.end != null)
+                block.end = Operands.rename(block.end, name, name);
+        }
+        final var vars = new ArrayList<IR.Var>();
+        for (int v = cfg.method.params.size(); v < used.length; v++)
+            if (used[v])
+                vars.add(new IR.Var(live.types.get(v), live.names.get(v)));
+        cfg.vars.clear();
+        cfg.vars.addAll(vars);
+        return cfg.toMethod();
+    }
+}
@@ -0,0 +1,320 @@
+package jlite.analysis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import jlite.codegen.IR;
+
+/**
+ * Sparse conditional constant propagation (Wegman and Zadeck) over an
+ * {@link Ssa} method. Values start unknown and only ever fall to a single
+ * constant and then to "varies"; blocks are only looked at once an edge
+ * into them is known to be taken. Afterwards every assignment of a
+ * constant becomes an {@link IR.Lit}, every conditional jump on a known
+ * condition becomes a jump or falls through, and literals nothing reads
+ * any more are dropped.
+ *
+ * <p>Folding follows the interpreter exactly: Int arithmetic wraps, a
+ * division by a constant zero is left to fault at run time, {@code &&}
+ * and {@code ||} see both operands, and Strings compare by value.
+ */
+public class ConstantPropagation {
+    private static final Object VARIES = new Object();
+
+    private final Ssa ssa;
+    private final Cfg cfg;
+    private final Map<String, Object> values = new HashMap<>();
+    // the statements reading each name, as {block, index}; index == stmts.size() is the block's end, < 0 is phi ~index
+    private final Map<String, List<int[]>> uses = new HashMap<>();
+    private final boolean[] executable;
+    private final boolean[][] taken;
+    private final ArrayDeque<int[]> edges = new ArrayDeque<>();
+    private final ArrayDeque<String> changed = new ArrayDeque<>();
+
+    private ConstantPropagation(Ssa ssa) {
+        this.ssa = ssa;
+        this.cfg = ssa.cfg;
+        final int n = cfg.blocks.size();
+        executable = new boolean[n];
+        taken = new boolean[n][];
+        for (int b = 0; b < n; b++)
+            taken[b] = new boolean[ssa.dom.preds[b].length];
+        for (final var p : cfg.method.params)
+            values.put(p.id, VARIES);
+        for (final var v : cfg.vars)
+            values.put(v.name, zero(v.type));
+        for (int b : ssa.dom.rpo) {
+            final var block = cfg.blocks.get(b);
+            final var phis = ssa.phis.get(b);
+            for (int i = 0; i < phis.size(); i++)
+                for (final var a : phis.get(i).args)
+                    if (a != null)
+                        use(a, b, ~i);
+            for (int i = 0; i < block.stmts.size(); i++)
+                for (final var u : Operands.uses(block.stmts.get(i)))
+                    use(u, b, i);
+            if (block.end != null)
+                for (final var u : Operands.uses(block.end))
+                    use(u, b, block.stmts.size());
+        }
+    }
+
+    private void use(String name, int b, int i) {
+        uses.computeIfAbsent(name, k -> new ArrayList<>()).add(new int[] { b, i });
+    }
+
+    // what a declared but never assigned local holds
+    private static Object zero(String type) {
+        if (type.equals("Int"))
+            return 0;
+        if (type.equals("Bool"))
+            return false;
+        return VARIES;
+    }
+
+    public static void apply(Ssa ssa) {
+        final var c = new ConstantPropagation(ssa);
+        c.solve();
+        c.rewrite();
+    }
+
+    private void solve() {
+        executable[0] = true;
+        visit(0);
+        while (!edges.isEmpty() || !changed.isEmpty()) {
+            while (!edges.isEmpty()) {
+                final var e = edges.pop();
+                final var preds = ssa.dom.preds[e[1]];
+                boolean fresh = false;
+                for (int k = 0; k < preds.length; k++)
+                    if (preds[k] == e[0] && !taken[e[1]][k])
+                        fresh = taken[e[1]][k] = true;
+                if (!fresh)
+                    continue;
+                if (!executable[e[1]]) {
+                    executable[e[1]] = true;
+                    visit(e[1]);
+                } else {
+                    final var phis = ssa.phis.get(e[1]);
+                    for (int i = 0; i < phis.size(); i++)
+                        evaluate(e[1], ~i);
+                }
+            }
+            while (!changed.isEmpty() && edges.isEmpty())
+                for (final var u : uses.getOrDefault(changed.pop(), List.of()))
+                    if (executable[u[0]])
+                        evaluate(u[0], u[1]);
+        }
+    }
+
+    private void visit(int b) {
+        final var block = cfg.blocks.get(b);
+        for (int i = 0; i < ssa.phis.get(b).size(); i++)
+            evaluate(b, ~i);
+        for (int i = 0; i <= block.stmts.size(); i++)
+            evaluate(b, i);
+    }
+
+    private void evaluate(int b, int i) {
+        final var block = cfg.blocks.get(b);
+        if (i < 0) {
+            final var phi = ssa.phis.get(b).get(~i);
+            Object v = null;
+            for (int k = 0; k < phi.args.length; k++)
+                if (taken[b][k])
+                    v = meet(v, value(phi.args[k]));
+            lower(phi.lhs, v);
+        } else if (i < block.stmts.size()) {
+            final var s = block.stmts.get(i);
+            final var d = Operands.def(s);
+            if (d != null)
+                lower(d, fold(s));
+        } else if (Cfg.conditional(block.end)) {
+            final var v = branch(block.end);
+            if (v == VARIES || Boolean.TRUE.equals(v))
+                edges.push(new int[] { b, cfg.target(Cfg.condTarget(block.end)) });
+            if ((v == VARIES || Boolean.FALSE.equals(v)) && block.next >= 0)
+                edges.push(new int[] { b, block.next });
+        } else {
+            for (int s : cfg.succs(block))
+                edges.push(new int[] { b, s });
+        }
+    }
+
+    // null is "not known yet"
+    private Object value(String name) {
+        return values.get(name);
+    }
+
+    // whether the conditional jump `end` is taken, as a value
+    private Object branch(IR.Stmt end) {
+        if (end instanceof IR.CondGoto)
+            return value(((IR.CondGoto) end).cond);
+        if (end instanceof IR.IfFalseGoto) {
+            final var v = value(((IR.IfFalseGoto) end).cond);
+            return v == null || v == VARIES ? v : (Object) !(Boolean) v;
+        }
+        final var c = (IR.CmpGoto) end;
+        final var a = value(c.a);
+        final var b = value(c.b);
+        if (a == VARIES || b == VARIES)
+            return VARIES;
+        if (a == null || b == null)
+            return null;
+        return binOp(c.op, a, b);
+    }
+
+    private static Object meet(Object a, Object b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        return a.equals(b) ? a : VARIES;
+    }
+
+    private void lower(String name, Object v) {
+        final var old = values.get(name);
+        final var now = meet(old, v);
+        if (!Objects.equals(old, now)) {
+            values.put(name, now);
+            changed.push(name);
+        }
+    }
+
+    private Object fold(IR.Stmt s) {
+        if (s instanceof IR.Lit)
+            return ((IR.Lit) s).rhs;
+        if (s instanceof IR.Assignment)
+            return value(((IR.Assignment) s).rhs);
+        if (s instanceof IR.UnOp) {
+            final var u = (IR.UnOp) s;
+            final var v = value(u.rhs);
+            if (v == null || v == VARIES)
+                return v;
+            return u.op.equals("-") ? (Object) (-(Integer) v) : (Object) !(Boolean) v;
+        }
+        if (s instanceof IR.BinOp) {
+            final var o = (IR.BinOp) s;
+            final var a = value(o.a);
+            final var b = value(o.b);
+            if (a == VARIES || b == VARIES)
+                return VARIES;
+            if (a == null || b == null)
+                return null;
+            return binOp(o.op, a, b);
+        }
+        return VARIES;
+    }
+
+    static Object binOp(String op, Object a, Object b) {
+        if (a instanceof String)
+            switch (op) {
+                case "+":
+                    return (String) a + (String) b;
+                case "==":
+                    return a.equals(b);
+                case "!=":
+                    return !a.equals(b);
+                default:
+                    return VARIES;
+            }
+        if (a instanceof Boolean)
+            switch (op) {
+                case "&&":
+                    return (Boolean) a && (Boolean) b;
+                case "||":
+                    return (Boolean) a || (Boolean) b;
+                case "==":
+                    return a.equals(b);
+                case "!=":
+                    return !a.equals(b);
+                default:
+                    return VARIES;
+            }
+        final int x = (Integer) a;
+        final int y = (Integer) b;
+        switch (op) {
+            case "+":
+                return x + y;
+            case "-":
+                return x - y;
+            case "*":
+                return x * y;
+            case "/":
+                return y == 0 ? VARIES : x / y;
+            case "<":
+                return x < y;
+            case "<=":
+                return x <= y;
+            case ">":
+                return x > y;
+            case ">=":
+                return x >= y;
+            case "==":
+                return x == y;
+            case "!=":
+                return x != y;
+            default:
+                return VARIES;
+        }
+    }
+
+    private static boolean constant(Object v) {
+        return v != null && v != VARIES;
+    }
+
+    private void rewrite() {
+        for (int b = 0; b < cfg.blocks.size(); b++) {
+            if (!executable[b])
+                continue;
+            final var block = cfg.blocks.get(b);
+            final var head = new ArrayList<IR.Stmt>();
+            ssa.phis.get(b).removeIf(phi -> {
+                final var v = value(phi.lhs);
+                if (constant(v))
+                    head.add(new IR.Lit(phi.lhs, v));
+                return constant(v);
+            });
+            for (int i = 0; i < block.stmts.size(); i++) {
+                final var s = block.stmts.get(i);
+                final var d = Operands.def(s);
+                final var v = d == null ? null : value(d);
+                if (constant(v) && !(s instanceof IR.Lit))
+                    block.stmts.set(i, new IR.Lit(d, v));
+            }
+            block.stmts.addAll(0, head);
+            if (Cfg.conditional(block.end)) {
+                final var v = branch(block.end);
+                if (Boolean.TRUE.equals(v))
+                    block.end = new IR.Goto(Cfg.condTarget(block.end));
+                else if (Boolean.FALSE.equals(v))
+                    block.end = null;
+            }
+        }
+
+        // literals whose only readers were folded away
+        final var read = new HashMap<String, Boolean>();
+        for (int b = 0; b < cfg.blocks.size(); b++) {
+            if (!executable[b])
+                continue;
+            final var block = cfg.blocks.get(b);
+            for (final var phi : ssa.phis.get(b))
+                for (int k = 0; k < phi.args.length; k++)
+                    if (taken[b][k])
+                        read.put(phi.args[k], true);
+            for (final var s : block.stmts)
+                for (final var u : Operands.uses(s))
+                    read.put(u, true);
+            if (block.end != null)
+                for (final var u : Operands.uses(block.end))
+                    read.put(u, true);
+        }
+        for (int b = 0; b < cfg.blocks.size(); b++)
+            if (executable[b])
+                cfg.blocks.get(b).stmts.removeIf(s -> s instanceof IR.Lit && !read.containsKey(((IR.Lit) s).lhs));
+    }
+}
@@ -0,0 +1,81 @@
+package jlite.analysis;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import jlite.codegen.IR;
+
+/**
+ * Removes copies from an {@link Ssa} method: after {@code y = x} every read
+ * of {@code y} reads {@code x}, and a phi whose arguments are all the same
+ * name, or the phi itself, is a copy too. A version can then be read
+ * where another version of its variable is live, so the method is no
+ * longer {@link Ssa#conventional}.
+ */
+public class CopyPropagation {
+    public static void apply(Ssa ssa) {
+        final var cfg = ssa.cfg;
+        final Map<String, String> copies = new HashMap<>();
+        final UnaryOperator<String> resolve = v -> {
+            var r = v;
+            while (copies.containsKey(r))
+                r = copies.get(r);
+            // shorten the chain for the next lookup
+            for (var c = v; !c.equals(r);) {
+                final var next = copies.get(c);
+                copies.put(c, r);
+                c = next;
+            }
+            return r;
+        };
+
+        for (int b : ssa.dom.rpo)
+            cfg.blocks.get(b).stmts.removeIf(s -> {
+                if (!(s instanceof IR.Assignment))
+                    return false;
+                final var a = (IR.Assignment) s;
+                // a parameter's name is never assigned by SSA, but guard anyway
+                if (!ssa.origin.containsKey(a.lhs))
+                    return false;
+                copies.put(a.lhs, a.rhs);
+                return true;
+            });
+
+        for (boolean changed = true; changed;) {
+            changed = false;
+            for (int b : ssa.dom.rpo)
+                changed |= ssa.phis.get(b).removeIf(phi -> {
+                    String same = null;
+                    for (final var a : phi.args) {
+                        if (a == null)
+                            continue;
+                        final var r = resolve.apply(a);
+                        if (r.equals(phi.lhs) || r.equals(same))
+                            continue;
+                        if (same != null)
+                            return false;
+                        same = r;
+                    }
+                    if (same == null)
+                        return false;
+                    copies.put(phi.lhs, same);
+                    return true;
+                });
+        }
+
+        if (copies.isEmpty())
+            return;
+        for (int b : ssa.dom.rpo) {
+            final var block = cfg.blocks.get(b);
+            block.stmts.replaceAll(s -> Operands.rename(s, resolve, v -> v));
+            if (block.end != null)
+                block.end = Operands.rename(block.end, resolve, v -> v);
+            for (final var phi : ssa.phis.get(b))
+                for (int k = 0; k < phi.args.length; k++)
+                    if (phi.args[k] != null)
+                        phi.args[k] = resolve.apply(phi.args[k]);
+        }
+        ssa.conventional = false;
+    }
+}
@@ -0,0 +1,77 @@
+package jlite.analysis;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jlite.codegen.IR;
+
+/**
+ * Removes statements of an {@link Ssa} method whose results are never
+ * needed. Jumps, returns and anything with an effect are needed: calls,
+ * syscalls, field writes, field reads (which fault on null) and divisions
+ * that are not by a literal other than zero. So is whatever computes a
+ * value something needed reads, phis included; the rest goes, however
+ * many dead statements read it.
+ */
+public class DeadCode {
+    public static void apply(Ssa ssa) {
+        final var cfg = ssa.cfg;
+        final Map<String, IR.Stmt> defs = new HashMap<>();
+        final Map<String, Ssa.Phi> phis = new HashMap<>();
+        for (int b : ssa.dom.rpo) {
+            for (final var phi : ssa.phis.get(b))
+                phis.put(phi.lhs, phi);
+            for (final var s : cfg.blocks.get(b).stmts) {
+                final var d = Operands.def(s);
+                if (d != null)
+                    defs.put(d, s);
+            }
+        }
+
+        final Set<String> needed = new HashSet<>();
+        final var work = new ArrayDeque<String>();
+        for (int b : ssa.dom.rpo)
+            for (final var s : cfg.blocks.get(b).all())
+                if (!pure(s, defs))
+                    for (final var u : Operands.uses(s))
+                        if (needed.add(u))
+                            work.push(u);
+        while (!work.isEmpty()) {
+            final var v = work.pop();
+            final List<String> reads;
+            if (phis.containsKey(v))
+                reads = Arrays.asList(phis.get(v).args);
+            else if (defs.containsKey(v))
+                reads = Operands.uses(defs.get(v));
+            else
+                continue;
+            for (final var u : reads)
+                if (u != null && needed.add(u))
+                    work.push(u);
+        }
+
+        for (int b : ssa.dom.rpo) {
+            ssa.phis.get(b).removeIf(phi -> !needed.contains(phi.lhs));
+            cfg.blocks.get(b).stmts.removeIf(s -> pure(s, defs) && !needed.contains(Operands.def(s)));
+        }
+    }
+
+    // whether `s` only computes its result, which nothing may need
+    static boolean pure(IR.Stmt s, Map<String, IR.Stmt> defs) {
+        if (s instanceof IR.Lit || s instanceof IR.Assignment || s instanceof IR.New || s instanceof IR.UnOp)
+            return true;
+        if (s instanceof IR.BinOp) {
+            final var b = (IR.BinOp) s;
+            if (!b.op.equals("/"))
+                return true;
+            final var divisor = defs.get(b.b);
+            return divisor instanceof IR.Lit && !Integer.valueOf(0).equals(((IR.Lit) divisor).rhs);
+        }
+        return false;
+    }
+}
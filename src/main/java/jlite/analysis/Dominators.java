@@ -0,0 +1,101 @@
+package jlite.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Immediate dominators, the dominator tree and dominance frontiers of a
+ * {@link Cfg}, computed with the iterative algorithm of Cooper, Harvey and
+ * Kennedy. Unreachable blocks have no dominator ({@code idom == -1}) and are
+ * left out of the tree and the frontiers.
+ */
+public class Dominators {
+    public final Cfg cfg;
+    public final int[] rpo;
+    public final int[][] preds;
+    public final int[] idom;
+    public final int[][] children;
+    public final int[][] frontier;
+    private final int[] order;
+
+    private Dominators(Cfg cfg) {
+        this.cfg = cfg;
+        final int n = cfg.blocks.size();
+        rpo = cfg.reversePostorder();
+        preds = cfg.preds();
+        order = new int[n];
+        Arrays.fill(order, -1);
+        for (int i = 0; i < rpo.length; i++)
+            order[rpo[i]] = i;
+
+        idom = new int[n];
+        Arrays.fill(idom, -1);
+        idom[0] = 0;
+        for (boolean changed = true; changed;) {
+            changed = false;
+            for (int i = 1; i < rpo.length; i++) {
+                final int b = rpo[i];
+                int d = -1;
+                for (int p : preds[b])
+                    if (idom[p] >= 0)
+                        d = d < 0 ? p : intersect(p, d);
+                if (idom[b] != d) {
+                    idom[b] = d;
+                    changed = true;
+                }
+            }
+        }
+
+        final var childCount = new int[n];
+        for (int i = 1; i < rpo.length; i++)
+            childCount[idom[rpo[i]]]++;
+        children = new int[n][];
+        for (int b = 0; b < n; b++)
+            children[b] = new int[childCount[b]];
+        Arrays.fill(childCount, 0);
+        for (int i = 1; i < rpo.length; i++) {
+            final int d = idom[rpo[i]];
+            children[d][childCount[d]++] = rpo[i];
+        }
+
+        final var df = new IntSet[n];
+        for (int b = 0; b < n; b++)
+            df[b] = new IntSet();
+        for (int b : rpo) {
+            if (preds[b].length < 2)
+                continue;
+            for (int p : preds[b])
+                for (int r = p; order[r] >= 0 && r != idom[b]; r = idom[r])
+                    df[r].add(b);
+        }
+        frontier = new int[n][];
+        for (int b = 0; b < n; b++)
+            frontier[b] = df[b].toArray();
+    }
+
+    public static Dominators of(Cfg cfg) {
+        return new Dominators(cfg);
+    }
+
+    private int intersect(int a, int b) {
+        while (a != b) {
+            while (order[a] > order[b])
+                a = idom[a];
+            while (order[b] > order[a])
+                b = idom[b];
+        }
+        return a;
+    }
+
+    public boolean reachable(int b) {
+        return order[b] >= 0;
+    }
+
+    // whether every path from the entry to `b` passes through `a`
+    public boolean dominates(int a, int b) {
+        if (!reachable(a) || !reachable(b))
+            return false;
+        while (order[b] > order[a])
+            b = idom[b];
+        return a == b;
+    }
+}
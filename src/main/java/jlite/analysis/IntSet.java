@@ -0,0 +1,89 @@
+package jlite.analysis;
+
+import java.util.Arrays;
+
+// an open-addressing set of non-negative ints; iterate with `at` over 0 until `capacity()`
+class IntSet {
+    private static final int FREE = -1;
+    private static final int GONE = -2;
+
+    private int[] slots = new int[4];
+    private int size;
+    private int used;
+
+    IntSet() {
+        Arrays.fill(slots, FREE);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    // the element in slot i, or -1
+    int at(int i) {
+        return slots[i] < 0 ? -1 : slots[i];
+    }
+
+    private int find(int x) {
+        final int mask = slots.length - 1;
+        int i = (x * 0x9E3779B9) >>> 1 & mask;
+        int gone = -1;
+        while (slots[i] != FREE) {
+            if (slots[i] == x)
+                return i;
+            if (slots[i] == GONE && gone < 0)
+                gone = i;
+            i = (i + 1) & mask;
+        }
+        return gone >= 0 ? gone : i;
+    }
+
+    boolean contains(int x) {
+        return slots[find(x)] == x;
+    }
+
+    boolean add(int x) {
+        final int i = find(x);
+        if (slots[i] == x)
+            return false;
+        if (slots[i] == FREE)
+            used++;
+        slots[i] = x;
+        size++;
+        if (used * 4 >= slots.length * 3)
+            rehash(size * 4 >= slots.length ? slots.length * 2 : slots.length);
+        return true;
+    }
+
+    boolean remove(int x) {
+        final int i = find(x);
+        if (slots[i] != x)
+            return false;
+        slots[i] = GONE;
+        size--;
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        final var old = slots;
+        slots = new int[capacity];
+        Arrays.fill(slots, FREE);
+        size = used = 0;
+        for (int x : old)
+            if (x >= 0)
+                add(x);
+    }
+
+    int[] toArray() {
+        final var a = new int[size];
+        int n = 0;
+        for (int x : slots)
+            if (x >= 0)
+                a[n++] = x;
+        return a;
+    }
+}
@@ -0,0 +1,86 @@
+package jlite.analysis;
+
+import jlite.codegen.IR;
+
+/**
+ * Tidies a flat method's control flow. A jump to an empty block that only
+ * jumps on goes straight to the final target, or returns if that is all
+ * the target does; a conditional jump to where it would fall through
+ * anyway disappears. A block whose only successor has no other
+ * predecessor absorbs it. Blocks nothing reaches any more, and labels
+ * nothing jumps to, are left out by {@link Cfg#toMethod()}.
+ */
+public class JumpThreading {
+    public static IR.Method apply(IR.Method m) {
+        final var cfg = Cfg.of(m);
+        thread(cfg);
+        merge(cfg);
+        return cfg.toMethod();
+    }
+
+    // where control ends up after passing through empty blocks that only jump
+    private static int forward(Cfg cfg, int b) {
+        for (int steps = 0; steps < cfg.blocks.size(); steps++) {
+            final var block = cfg.blocks.get(b);
+            if (!block.stmts.isEmpty())
+                return b;
+            if (block.end instanceof IR.Goto)
+                b = cfg.target(((IR.Goto) block.end).label);
+            else if (block.end == null && block.next >= 0)
+                b = block.next;
+            else
+                return b;
+        }
+        // an empty loop
+        return b;
+    }
+
+    private static boolean onlyReturns(Cfg.Block b) {
+        return b.stmts.isEmpty() && b.end instanceof IR.Return;
+    }
+
+    private static void thread(Cfg cfg) {
+        for (final var b : cfg.blocks) {
+            if (b.end instanceof IR.Goto) {
+                final var t = cfg.blocks.get(forward(cfg, cfg.target(((IR.Goto) b.end).label)));
+                b.end = onlyReturns(t) ? t.end : new IR.Goto(cfg.label(t));
+            } else if (Cfg.conditional(b.end)) {
+                final int t = forward(cfg, cfg.target(Cfg.condTarget(b.end)));
+                if (b.next >= 0)
+                    b.next = forward(cfg, b.next);
+                b.end = t == b.next ? null : Cfg.retarget(b.end, cfg.label(cfg.blocks.get(t)));
+            } else if (b.end == null && b.next >= 0) {
+                b.next = forward(cfg, b.next);
+                if (onlyReturns(cfg.blocks.get(b.next)))
+                    b.end = cfg.blocks.get(b.next).end;
+            }
+        }
+    }
+
+    private static void merge(Cfg cfg) {
+        final var reachable = cfg.reachable();
+        final var preds = new int[cfg.blocks.size()];
+        for (final var b : cfg.blocks)
+            if (reachable[b.id])
+                for (int s : cfg.succs(b))
+                    preds[s]++;
+        for (final var b : cfg.blocks) {
+            if (!reachable[b.id])
+                continue;
+            while (true) {
+                final var succs = cfg.succs(b);
+                if (succs.length != 1 || succs[0] == 0 || succs[0] == b.id || preds[succs[0]] != 1
+                        || Cfg.conditional(b.end))
+                    break;
+                final var s = cfg.blocks.get(succs[0]);
+                b.stmts.addAll(s.stmts);
+                b.end = s.end;
+                b.next = s.next;
+                s.stmts.clear();
+                s.end = null;
+                s.next = -1;
+                reachable[s.id] = false;
+            }
+        }
+    }
+}
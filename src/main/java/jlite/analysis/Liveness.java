@@ -0,0 +1,133 @@
+package jlite.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Which variables of a flat {@link Cfg} are live at the start and end of
+ * each block. Variables are numbered parameters first, then declarations in
+ * order. Only variables some block reads before assigning them can be live
+ * across blocks, so the per-block sets range over those alone; everything
+ * else lives and dies inside one block and shows up when a pass walks it
+ * backwards.
+ */
+public class Liveness {
+    public final Cfg cfg;
+    public final List<String> names = new ArrayList<>();
+    public final List<String> types = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final int[] globals;
+    private final BitSet[] in;
+    private final BitSet[] out;
+
+    private Liveness(Cfg cfg) {
+        this.cfg = cfg;
+        for (final var p : cfg.method.params)
+            declare(p.id, p.type);
+        for (final var v : cfg.vars)
+            declare(v.name, v.type);
+
+        final int n = cfg.blocks.size();
+        final var rpo = cfg.reversePostorder();
+        final var global = new int[names.size()];
+        final var assigned = new int[names.size()];
+        final var list = new ArrayList<Integer>();
+        Arrays.fill(global, -1);
+        for (int b : rpo)
+            for (final var s : cfg.blocks.get(b).all()) {
+                for (final var u : Operands.uses(s)) {
+                    final int v = id(u);
+                    if (v >= 0 && assigned[v] != b + 1 && global[v] < 0) {
+                        global[v] = list.size();
+                        list.add(v);
+                    }
+                }
+                final int d = id(Operands.def(s));
+                if (d >= 0)
+                    assigned[d] = b + 1;
+            }
+        globals = list.stream().mapToInt(Integer::intValue).toArray();
+
+        // upward exposed reads and assignments of globals, per block
+        final var gen = new BitSet[n];
+        final var kill = new BitSet[n];
+        for (int b : rpo) {
+            gen[b] = new BitSet();
+            kill[b] = new BitSet();
+            for (final var s : cfg.blocks.get(b).all()) {
+                for (final var u : Operands.uses(s)) {
+                    final int v = id(u);
+                    if (v >= 0 && global[v] >= 0 && !kill[b].get(global[v]))
+                        gen[b].set(global[v]);
+                }
+                final int d = id(Operands.def(s));
+                if (d >= 0 && global[d] >= 0)
+                    kill[b].set(global[d]);
+            }
+        }
+
+        out = new BitSet[n];
+        in = new BitSet[n];
+        for (int b : rpo) {
+            out[b] = new BitSet();
+            in[b] = (BitSet) gen[b].clone();
+        }
+        final var succs = new int[n][];
+        for (int b : rpo)
+            succs[b] = cfg.succs(cfg.blocks.get(b));
+        for (boolean changed = true; changed;) {
+            changed = false;
+            for (int i = rpo.length - 1; i >= 0; i--) {
+                final int b = rpo[i];
+                final var o = new BitSet();
+                for (int s : succs[b])
+                    o.or(in[s]);
+                if (o.equals(out[b]))
+                    continue;
+                out[b] = o;
+                final var x = (BitSet) o.clone();
+                x.andNot(kill[b]);
+                x.or(gen[b]);
+                in[b] = x;
+                changed = true;
+            }
+        }
+    }
+
+    public static Liveness of(Cfg cfg) {
+        return new Liveness(cfg);
+    }
+
+    private void declare(String name, String type) {
+        if (ids.putIfAbsent(name, names.size()) == null) {
+            names.add(name);
+            types.add(type);
+        }
+    }
+
+    // the variable's number, or -1 for null or a name that is not a variable
+    public int id(String name) {
+        if (name == null)
+            return -1;
+        final Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public boolean isParam(int v) {
+        return v < cfg.method.params.size();
+    }
+
+    // the variables live at the start of reachable block b
+    public int[] liveIn(int b) {
+        return in[b].stream().map(g -> globals[g]).toArray();
+    }
+
+    // the variables live at the end of reachable block b
+    public int[] liveOut(int b) {
+        return out[b].stream().map(g -> globals[g]).toArray();
+    }
+}
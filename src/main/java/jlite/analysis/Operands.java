@@ -0,0 +1,121 @@
+package jlite.analysis;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+import jlite.codegen.IR;
+
+/**
+ * The variables an {@link IR.Stmt} reads and writes. Field names, method
+ * names and syscall names are not variables; {@code readln} writes its
+ * argument rather than reading it.
+ */
+public class Operands {
+    // the variable `s` assigns, or null
+    public static String def(IR.Stmt s) {
+        if (s instanceof IR.Lit)
+            return ((IR.Lit) s).lhs;
+        if (s instanceof IR.Assignment)
+            return ((IR.Assignment) s).lhs;
+        if (s instanceof IR.New)
+            return ((IR.New) s).lhs;
+        if (s instanceof IR.BinOp)
+            return ((IR.BinOp) s).lhs;
+        if (s instanceof IR.UnOp)
+            return ((IR.UnOp) s).lhs;
+        if (s instanceof IR.Access)
+            return ((IR.Access) s).lhs;
+        if (s instanceof IR.Call)
+            return ((IR.Call) s).lhs;
+        if (s instanceof IR.Syscall && isReadln((IR.Syscall) s))
+            return ((IR.Syscall) s).args.get(0);
+        return null;
+    }
+
+    public static List<String> uses(IR.Stmt s) {
+        if (s instanceof IR.Assignment)
+            return List.of(((IR.Assignment) s).rhs);
+        if (s instanceof IR.FieldAssignment)
+            return List.of(((IR.FieldAssignment) s).lhs, ((IR.FieldAssignment) s).rhs);
+        if (s instanceof IR.BinOp)
+            return List.of(((IR.BinOp) s).a, ((IR.BinOp) s).b);
+        if (s instanceof IR.UnOp)
+            return List.of(((IR.UnOp) s).rhs);
+        if (s instanceof IR.Access)
+            return List.of(((IR.Access) s).rhs);
+        if (s instanceof IR.Call)
+            return ((IR.Call) s).args;
+        if (s instanceof IR.Syscall && !isReadln((IR.Syscall) s))
+            return ((IR.Syscall) s).args;
+        if (s instanceof IR.Return && ((IR.Return) s).id != null)
+            return List.of(((IR.Return) s).id);
+        if (s instanceof IR.CondGoto)
+            return List.of(((IR.CondGoto) s).cond);
+        if (s instanceof IR.IfFalseGoto)
+            return List.of(((IR.IfFalseGoto) s).cond);
+        if (s instanceof IR.CmpGoto)
+            return List.of(((IR.CmpGoto) s).a, ((IR.CmpGoto) s).b);
+        return List.of();
+    }
+
+    static boolean isReadln(IR.Syscall s) {
+        return s.lhs.equals("readln");
+    }
+
+    // a copy of `s` with every read renamed by `use` and the write by `def`
+    public static IR.Stmt rename(IR.Stmt s, UnaryOperator<String> use, UnaryOperator<String> def) {
+        if (s instanceof IR.Lit)
+            return new IR.Lit(def.apply(((IR.Lit) s).lhs), ((IR.Lit) s).rhs);
+        if (s instanceof IR.Assignment) {
+            final var a = (IR.Assignment) s;
+            final var rhs = use.apply(a.rhs);
+            return new IR.Assignment(def.apply(a.lhs), rhs);
+        }
+        if (s instanceof IR.New)
+            return new IR.New(def.apply(((IR.New) s).lhs), ((IR.New) s).type);
+        if (s instanceof IR.BinOp) {
+            final var b = (IR.BinOp) s;
+            final var l = use.apply(b.a);
+            final var r = use.apply(b.b);
+            return new IR.BinOp(def.apply(b.lhs), b.op, l, r);
+        }
+        if (s instanceof IR.UnOp) {
+            final var u = (IR.UnOp) s;
+            final var rhs = use.apply(u.rhs);
+            return new IR.UnOp(def.apply(u.lhs), u.op, rhs);
+        }
+        if (s instanceof IR.Access) {
+            final var a = (IR.Access) s;
+            final var rhs = use.apply(a.rhs);
+            return new IR.Access(def.apply(a.lhs), rhs, a.member);
+        }
+        if (s instanceof IR.FieldAssignment) {
+            final var a = (IR.FieldAssignment) s;
+            return new IR.FieldAssignment(use.apply(a.lhs), a.id, use.apply(a.rhs));
+        }
+        if (s instanceof IR.Call) {
+            final var c = (IR.Call) s;
+            final var args = c.args.stream().map(use).collect(Collectors.toList());
+            return new IR.Call(c.lhs == null ? null : def.apply(c.lhs), c.rhs, args);
+        }
+        if (s instanceof IR.Syscall) {
+            final var c = (IR.Syscall) s;
+            final var rename = isReadln(c) ? def : use;
+            return new IR.Syscall(c.lhs, c.args.stream().map(rename).collect(Collectors.toList()));
+        }
+        if (s instanceof IR.Return)
+            return ((IR.Return) s).id == null ? s : new IR.Return(use.apply(((IR.Return) s).id));
+        if (s instanceof IR.CondGoto)
+            return new IR.CondGoto(use.apply(((IR.CondGoto) s).cond), ((IR.CondGoto) s).target);
+        if (s instanceof IR.IfFalseGoto)
+            return new IR.IfFalseGoto(use.apply(((IR.IfFalseGoto) s).cond), ((IR.IfFalseGoto) s).target);
+        if (s instanceof IR.CmpGoto) {
+            final var c = (IR.CmpGoto) s;
+            final var a = use.apply(c.a);
+            final var b = use.apply(c.b);
+            return new IR.CmpGoto(c.op, a, b, c.target);
+        }
+        return s;
+    }
+}
@@ -0,0 +1,40 @@
+package jlite.analysis;
+
+import java.io.PrintStream;
+import java.util.stream.Collectors;
+
+import jlite.codegen.IR;
+
+/**
+ * Runs the IR passes over every method: into SSA, constant and copy
+ * propagation and dead code removal, back out, coalescing of the
+ * variables that leaves, and jump threading.
+ */
+public class Optimizer {
+    public static IR.Program optimize(IR.Program p) {
+        return new IR.Program(p.decls, p.methods.parallelStream()
+                .map(Optimizer::optimize)
+                .collect(Collectors.toList()));
+    }
+
+    // also prints how many variables each method declared before and after
+    public static IR.Program optimize(IR.Program p, PrintStream report) {
+        final var q = optimize(p);
+        for (int i = 0; i < p.methods.size(); i++)
+            report.println(String.format("%s: %d -> %d temps", p.methods.get(i).name,
+                    temps(p.methods.get(i)), temps(q.methods.get(i))));
+        return q;
+    }
+
+    static long temps(IR.Method m) {
+        return m.body.stream().filter(s -> s instanceof IR.Var).count();
+    }
+
+    public static IR.Method optimize(IR.Method m) {
+        final var ssa = Ssa.of(m);
+        ConstantPropagation.apply(ssa);
+        CopyPropagation.apply(ssa);
+        DeadCode.apply(ssa);
+        return JumpThreading.apply(Coalescing.apply(ssa.toMethod()));
+    }
+}
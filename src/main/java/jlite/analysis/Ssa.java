@@ -0,0 +1,256 @@
+package jlite.analysis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+import jlite.codegen.IR;
+
+/**
+ * A method's {@link Cfg} in static single assignment form. Every
+ * assignment gets a fresh name {@code x.N}; {@code x} itself stands for the
+ * value the variable has on entry (the argument for a parameter, the zero
+ * value otherwise). Phis are placed at the iterated dominance frontier of a
+ * variable's assignments, but only for variables read in some block
+ * before being assigned there (semi-pruned form).
+ *
+ * <p>{@link #toMethod()} leaves SSA again. Renaming alone never makes two
+ * versions of a variable live at once, so while {@link #conventional} holds
+ * every name simply goes back to the variable it came from. Otherwise each
+ * phi reads a variable of its own that every predecessor assigns just
+ * before its jump, so no edge has to be split and phis in the same block
+ * never clobber each other.
+ */
+public class Ssa {
+    public static class Phi {
+        public String lhs;
+        public final String var;
+        // one argument per entry of `preds` of the phi's block
+        public final String[] args;
+
+        Phi(String lhs, String var, int arity) {
+            this.lhs = lhs;
+            this.var = var;
+            this.args = new String[arity];
+        }
+    }
+
+    public final Cfg cfg;
+    public final Dominators dom;
+    public final List<List<Phi>> phis = new ArrayList<>();
+    // type of every variable, old and new names alike
+    public final Map<String, String> types = new LinkedHashMap<>();
+    // the variable each new name is a version of
+    public final Map<String, String> origin = new HashMap<>();
+    // passes that can make two versions of a variable live at once clear this
+    public boolean conventional = true;
+
+    private Ssa(Cfg cfg) {
+        this.cfg = cfg;
+        this.dom = Dominators.of(cfg);
+        for (final var p : cfg.method.params)
+            types.put(p.id, p.type);
+        for (final var v : cfg.vars)
+            types.put(v.name, v.type);
+        for (int b = 0; b < cfg.blocks.size(); b++)
+            phis.add(new ArrayList<>());
+        placePhis();
+        rename();
+    }
+
+    public static Ssa of(IR.Method m) {
+        return new Ssa(Cfg.of(m));
+    }
+
+    // rewrites `cfg` in place
+    public static Ssa of(Cfg cfg) {
+        return new Ssa(cfg);
+    }
+
+    private void placePhis() {
+        final Map<String, List<Integer>> defs = new HashMap<>();
+        final Set<String> live = new HashSet<>();
+        for (int b : dom.rpo) {
+            final Set<String> assigned = new HashSet<>();
+            for (final var s : cfg.blocks.get(b).all()) {
+                for (final var u : Operands.uses(s))
+                    if (!assigned.contains(u))
+                        live.add(u);
+                final var d = Operands.def(s);
+                if (d != null && types.containsKey(d) && assigned.add(d))
+                    defs.computeIfAbsent(d, k -> new ArrayList<>()).add(b);
+            }
+        }
+        for (final var e : defs.entrySet()) {
+            if (!live.contains(e.getKey()))
+                continue;
+            final var has = new boolean[cfg.blocks.size()];
+            final var work = new ArrayDeque<Integer>(e.getValue());
+            while (!work.isEmpty())
+                for (int f : dom.frontier[work.pop()])
+                    if (!has[f]) {
+                        has[f] = true;
+                        phis.get(f).add(new Phi(null, e.getKey(), dom.preds[f].length));
+                        work.push(f);
+                    }
+        }
+    }
+
+    private void rename() {
+        final Map<String, ArrayDeque<String>> stacks = new HashMap<>();
+        final Map<String, Integer> versions = new HashMap<>();
+        for (final var v : types.keySet()) {
+            stacks.put(v, new ArrayDeque<>());
+            stacks.get(v).push(v);
+        }
+        final var originals = new HashMap<>(types);
+        final UnaryOperator<String> use = v -> stacks.containsKey(v) ? stacks.get(v).peek() : v;
+        final UnaryOperator<String> def = v -> {
+            if (!stacks.containsKey(v))
+                return v;
+            final int n = versions.merge(v, 1, Integer::sum);
+            final var name = v + "." + n;
+            types.put(name, originals.get(v));
+            origin.put(name, v);
+            stacks.get(v).push(name);
+            return name;
+        };
+
+        // dominator tree walk; a negative entry pops the names block ~b pushed
+        final var work = new ArrayDeque<Integer>();
+        final var pushed = new ArrayList<List<String>>();
+        for (int b = 0; b < cfg.blocks.size(); b++)
+            pushed.add(new ArrayList<>());
+        work.push(0);
+        while (!work.isEmpty()) {
+            final int b = work.pop();
+            if (b < 0) {
+                for (final var v : pushed.get(~b))
+                    stacks.get(v).pop();
+                continue;
+            }
+            work.push(~b);
+            final var block = cfg.blocks.get(b);
+            final var mine = pushed.get(b);
+            for (final var phi : phis.get(b)) {
+                phi.lhs = def.apply(phi.var);
+                mine.add(phi.var);
+            }
+            for (int i = 0; i < block.stmts.size(); i++) {
+                final var s = block.stmts.get(i);
+                final var d = Operands.def(s);
+                block.stmts.set(i, Operands.rename(s, use, def));
+                if (d != null && stacks.containsKey(d))
+                    mine.add(d);
+            }
+            if (block.end != null)
+                block.end = Operands.rename(block.end, use, def);
+            for (int s : cfg.succs(block)) {
+                final var preds = dom.preds[s];
+                for (int k = 0; k < preds.length; k++)
+                    if (preds[k] == b)
+                        for (final var phi : phis.get(s))
+                            phi.args[k] = use.apply(phi.var);
+            }
+            for (int c : dom.children[b])
+                work.push(c);
+        }
+    }
+
+    /**
+     * Checks that every name is assigned once and that every read is
+     * dominated by the assignment it reads.
+     */
+    public void verify() {
+        final Map<String, Integer> defBlock = new HashMap<>();
+        final Map<String, Integer> defIndex = new HashMap<>();
+        for (final var p : cfg.method.params)
+            defBlock.put(p.id, 0);
+        for (int b : dom.rpo) {
+            for (final var phi : phis.get(b))
+                define(defBlock, defIndex, phi.lhs, b, -1);
+            final var stmts = cfg.blocks.get(b).all();
+            for (int i = 0; i < stmts.size(); i++) {
+                final var d = Operands.def(stmts.get(i));
+                if (d != null && types.containsKey(d))
+                    define(defBlock, defIndex, d, b, i);
+            }
+        }
+        for (int b : dom.rpo) {
+            for (final var phi : phis.get(b))
+                for (int k = 0; k < phi.args.length; k++)
+                    if (dom.reachable(dom.preds[b][k]))
+                        reads(defBlock, defIndex, phi.args[k], dom.preds[b][k], Integer.MAX_VALUE);
+            final var stmts = cfg.blocks.get(b).all();
+            for (int i = 0; i < stmts.size(); i++)
+                for (final var u : Operands.uses(stmts.get(i)))
+                    reads(defBlock, defIndex, u, b, i);
+        }
+    }
+
+    private void define(Map<String, Integer> block, Map<String, Integer> index, String v, int b, int i) {
+        if (!origin.containsKey(v) || block.put(v, b) != null)
+            throw new IllegalStateException(cfg.method.name + ": " + v + " is assigned more than once");
+        index.put(v, i);
+    }
+
+    private void reads(Map<String, Integer> block, Map<String, Integer> index, String v, int b, int i) {
+        if (!types.containsKey(v))
+            throw new IllegalStateException(cfg.method.name + ": " + v + " is not a variable");
+        final Integer d = block.get(v);
+        if (d == null)
+            return;
+        final boolean before = d != b ? dom.dominates(d, b) : index.getOrDefault(v, -1) < i;
+        if (!before)
+            throw new IllegalStateException(cfg.method.name + ": read of " + v + " is not dominated by its assignment");
+    }
+
+    // back to a flat method; consumes the phis
+    public IR.Method toMethod() {
+        if (!conventional)
+            return withCopies();
+        final UnaryOperator<String> back = v -> origin.getOrDefault(v, v);
+        for (final var b : cfg.blocks) {
+            b.stmts.replaceAll(s -> Operands.rename(s, back, back));
+            if (b.end != null)
+                b.end = Operands.rename(b.end, back, back);
+        }
+        for (final var here : phis)
+            here.clear();
+        return cfg.toMethod();
+    }
+
+    private IR.Method withCopies() {
+        // parameters come first in `types`
+        final var vars = types.entrySet().stream()
+                .skip(cfg.method.params.size())
+                .map(e -> new IR.Var(e.getValue(), e.getKey()))
+                .collect(Collectors.toCollection(ArrayList::new));
+        for (int b = 0; b < cfg.blocks.size(); b++) {
+            final var here = phis.get(b);
+            if (here.isEmpty())
+                continue;
+            final var head = new ArrayList<IR.Stmt>();
+            for (final var phi : here) {
+                final var in = phi.lhs + ".in";
+                vars.add(new IR.Var(types.get(phi.lhs), in));
+                head.add(new IR.Assignment(phi.lhs, in));
+                for (int k = 0; k < phi.args.length; k++)
+                    if (phi.args[k] != null)
+                        cfg.blocks.get(dom.preds[b][k]).stmts.add(new IR.Assignment(in, phi.args[k]));
+            }
+            cfg.blocks.get(b).stmts.addAll(0, head);
+            here.clear();
+        }
+        cfg.vars.clear();
+        cfg.vars.addAll(vars);
+        return cfg.toMethod();
+    }
+}
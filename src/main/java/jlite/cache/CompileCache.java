@@ -0,0 +1,232 @@
+package jlite.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store of whole compilations. An entry is keyed by a
+ * hash of the compiler's own class files, the options, the file name and
+ * the source bytes, and holds everything the compilation produced: its
+ * stdout, its stderr and the binary IR, if one was asked for.
+ *
+ * Entries are written to a temp file and atomically renamed into place,
+ * so several compilers can share one directory. Every hit refreshes the
+ * entry's modification time, and once the directory grows past its bound
+ * the least recently used entries are deleted.
+ *
+ * <pre>
+ *   java -cp ... jlite.App --cache=.jlite-cache [--cache-size=MB] [--cache-stats] file.j...
+ * </pre>
+ */
+public class CompileCache {
+    static final int MAGIC = 0x4a4c4343;
+    static final String SUFFIX = ".entry";
+
+    public static class Entry {
+        public final byte[] out;
+        public final byte[] err;
+        // empty unless the compilation wrote binary IR
+        public final byte[] ir;
+
+        public Entry(byte[] out, byte[] err, byte[] ir) {
+            this.out = out;
+            this.err = err;
+            this.ir = ir;
+        }
+    }
+
+    private final Path dir;
+    private final long maxBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    // the directory's size at the last scan plus everything put since;
+    // other compilers' entries are only counted again at the next scan
+    private final AtomicLong bytes = new AtomicLong();
+
+    private static volatile String compilerVersion;
+
+    public CompileCache(Path dir, long maxBytes) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.maxBytes = maxBytes;
+        long total = 0;
+        try (Stream<Path> files = Files.list(this.dir)) {
+            for (Path p : (Iterable<Path>) files.filter(f -> f.toString().endsWith(SUFFIX))::iterator)
+                total += size(p);
+        }
+        bytes.set(total);
+    }
+
+    public String key(String fileLoc, String options, byte[] source) {
+        final var md = Digests.sha256();
+        for (String part : new String[]{compilerVersion(), options, fileLoc})
+            Digests.update(md, part);
+        md.update(source);
+        return Digests.hex(md.digest());
+    }
+
+    public Entry get(String key) {
+        final var path = dir.resolve(key + SUFFIX);
+        try (var in = new DataInputStream(Files.newInputStream(path))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("not a cache entry");
+            final var entry = new Entry(bytes(in), bytes(in), bytes(in));
+            touch(path);
+            hits.incrementAndGet();
+            return entry;
+        } catch (IOException e) {
+            // missing, evicted under us, or damaged: all just misses
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    public void put(String key, Entry entry) throws IOException {
+        final var tmp = Files.createTempFile(dir, key, ".tmp");
+        try {
+            long written = 4;
+            try (var out = new DataOutputStream(Files.newOutputStream(tmp))) {
+                out.writeInt(MAGIC);
+                for (byte[] b : new byte[][]{entry.out, entry.err, entry.ir}) {
+                    out.writeInt(b.length);
+                    out.write(b);
+                    written += 4 + b.length;
+                }
+            }
+            Files.move(tmp, dir.resolve(key + SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+            // only a full directory is listed and sorted
+            if (bytes.addAndGet(written) > maxBytes)
+                evict();
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // oldest first until the directory is back under 90% of its bound
+    synchronized void evict() throws IOException {
+        final List<Path> entries;
+        try (Stream<Path> files = Files.list(dir)) {
+            entries = files.filter(p -> p.toString().endsWith(SUFFIX)).collect(Collectors.toList());
+        }
+        long total = 0;
+        final var sized = new long[entries.size()];
+        final var times = new FileTime[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            try {
+                sized[i] = Files.size(entries.get(i));
+                times[i] = Files.getLastModifiedTime(entries.get(i));
+            } catch (NoSuchFileException e) {
+                times[i] = FileTime.fromMillis(0);
+            }
+            total += sized[i];
+        }
+        if (total <= maxBytes) {
+            bytes.set(total);
+            return;
+        }
+
+        final var order = IntStream.range(0, entries.size()).boxed()
+                .sorted(Comparator.comparing(i -> times[i]))
+                .collect(Collectors.toList());
+        for (int i : order) {
+            if (total <= maxBytes * 9 / 10)
+                break;
+            if (Files.deleteIfExists(entries.get(i)))
+                evictions.incrementAndGet();
+            total -= sized[i];
+        }
+        bytes.set(total);
+    }
+
+    @Override
+    public String toString() {
+        long entries = 0, bytes = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files.filter(f -> f.toString().endsWith(SUFFIX))::iterator) {
+                entries++;
+                bytes += Files.size(p);
+            }
+        } catch (IOException e) {
+            // sizes are only informational
+        }
+        return String.format("cache: hits: %d, misses: %d, evicted: %d, entries: %d, bytes: %d",
+                hits.get(), misses.get(), evictions.get(), entries, bytes);
+    }
+
+    private static long size(Path path) throws IOException {
+        try {
+            return Files.size(path);
+        } catch (NoSuchFileException e) {
+            // evicted by another compiler in the meantime
+            return 0;
+        }
+    }
+
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // evicted by another compiler in the meantime
+        }
+    }
+
+    private static byte[] bytes(DataInputStream in) throws IOException {
+        final var b = new byte[in.readInt()];
+        in.readFully(b);
+        return b;
+    }
+
+    // a hash of every class file the compiler was loaded from, so a rebuilt
+    // compiler never reuses entries of an older one
+    static String compilerVersion() {
+        if (compilerVersion != null)
+            return compilerVersion;
+        try {
+            final var md = Digests.sha256();
+            final var location = Paths.get(CompileCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (Files.isDirectory(location)) {
+                final List<Path> classes;
+                try (Stream<Path> files = Files.walk(location)) {
+                    classes = files.filter(p -> p.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+                }
+                for (Path p : classes) {
+                    md.update(location.relativize(p).toString().getBytes(StandardCharsets.UTF_8));
+                    md.update(Files.readAllBytes(p));
+                }
+            } else {
+                try (var jar = new JarFile(location.toFile())) {
+                    for (var e : jar.stream().filter(e -> e.getName().endsWith(".class"))
+                            .sorted(Comparator.comparing(e -> e.getName())).collect(Collectors.toList())) {
+                        md.update(e.getName().getBytes(StandardCharsets.UTF_8));
+                        try (InputStream in = jar.getInputStream(e)) {
+                            md.update(in.readAllBytes());
+                        }
+                    }
+                }
+            }
+            return compilerVersion = Digests.hex(md.digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package jlite.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 helpers shared by the compilation cache and the incremental
+ * method fingerprints.
+ */
+public class Digests {
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // length-prefixed, so adjacent parts cannot run into each other
+    public static void update(MessageDigest md, String part) {
+        final var bytes = part.getBytes(StandardCharsets.UTF_8);
+        md.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+        md.update((byte) ':');
+        md.update(bytes);
+    }
+
+    public static String hex(byte[] bytes) {
+        final var sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return sb.toString();
+    }
+}
@@ -209,6 +209,32 @@ public class IR {
         }
     }
 
+    // jumps if cond is false
+    public static class IfFalseGoto extends Stmt {
+        public final String cond;
+        public final String target;
+
+        public IfFalseGoto(String cond, String target) {
+            this.cond = cond;
+            this.target = target;
+        }
+    }
+
+    // jumps if `a op b` holds; op is a comparison of Int or Bool values
+    public static class CmpGoto extends Stmt {
+        public final String op;
+        public final String a;
+        public final String b;
+        public final String target;
+
+        public CmpGoto(String op, String a, String b, String target) {
+            this.op = op;
+            this.a = a;
+            this.b = b;
+            this.target = target;
+        }
+    }
+
     public static class Goto extends Stmt {
         public final String label;
 
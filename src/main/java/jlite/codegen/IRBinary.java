@@ -0,0 +1,513 @@
+package jlite.codegen;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of {@link IR.Program}.
+ *
+ * <pre>
+ *   magic "JIR3", u16 version, u32 decls offset, u32 methods offset
+ *   strings:  varint count, (varint length, utf-8 bytes)*
+ *   decls:    varint count, u32 offset*, data*
+ *   methods:  varint count, u32 offset*, method*
+ * </pre>
+ *
+ * Every name is a varint index into the string table, offset by one so
+ * that 0 stands for null. Offsets are relative to the start of the buffer,
+ * so a {@link Reader} can decode any single data or method on demand.
+ */
+public class IRBinary {
+    static final byte[] MAGIC = {'J', 'I', 'R', '3'};
+    public static final int VERSION = 2;
+
+    static final int VAR = 1;
+    static final int NEW = 2;
+    static final int ASSIGNMENT = 3;
+    static final int FIELD_ASSIGNMENT = 4;
+    static final int LIT = 5;
+    static final int BIN_OP = 6;
+    static final int UN_OP = 7;
+    static final int ACCESS = 8;
+    static final int CALL = 9;
+    static final int SYSCALL = 10;
+    static final int RETURN = 11;
+    static final int LABEL = 12;
+    static final int COND_GOTO = 13;
+    static final int GOTO = 14;
+    static final int IF_FALSE_GOTO = 15;
+    static final int CMP_GOTO = 16;
+
+    static final int LIT_NULL = 0;
+    static final int LIT_INT = 1;
+    static final int LIT_TRUE = 2;
+    static final int LIT_FALSE = 3;
+    static final int LIT_STRING = 4;
+
+    public static byte[] write(IR.Program p) {
+        return new Writer().program(p);
+    }
+
+    public static void write(IR.Program p, OutputStream out) throws IOException {
+        out.write(write(p));
+    }
+
+    public static Reader read(ByteBuffer buf) {
+        return new Reader(buf);
+    }
+
+    public static Reader map(Path path) throws IOException {
+        try (var ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Reader(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    public static Reader read(Path path) throws IOException {
+        return new Reader(ByteBuffer.wrap(Files.readAllBytes(path)));
+    }
+
+    static class Buf {
+        byte[] b = new byte[256];
+        int len = 0;
+
+        void ensure(int n) {
+            if (len + n > b.length)
+                b = Arrays.copyOf(b, Math.max(b.length * 2, len + n));
+        }
+
+        void u8(int v) {
+            ensure(1);
+            b[len++] = (byte) v;
+        }
+
+        void u16(int v) {
+            u8(v >>> 8);
+            u8(v);
+        }
+
+        void u32(int v) {
+            u16(v >>> 16);
+            u16(v);
+        }
+
+        void varint(int v) {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                b[len++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            b[len++] = (byte) v;
+        }
+
+        void bytes(byte[] src, int off, int n) {
+            ensure(n);
+            System.arraycopy(src, off, b, len, n);
+            len += n;
+        }
+    }
+
+    static class Writer {
+        final Map<String, Integer> index = new HashMap<>();
+        final List<String> strings = new ArrayList<>();
+
+        byte[] program(IR.Program p) {
+            final var decls = new ArrayList<Buf>();
+            for (IR.Data d : p.decls)
+                decls.add(data(d));
+            final var methods = new ArrayList<Buf>();
+            for (IR.Method m : p.methods)
+                methods.add(method(m));
+
+            final var out = new Buf();
+            out.bytes(MAGIC, 0, MAGIC.length);
+            out.u16(VERSION);
+            out.u32(0);
+            out.u32(0);
+            out.varint(strings.size());
+            for (String s : strings) {
+                final var utf8 = s.getBytes(StandardCharsets.UTF_8);
+                out.varint(utf8.length);
+                out.bytes(utf8, 0, utf8.length);
+            }
+            patch(out, 6, out.len);
+            section(out, decls);
+            patch(out, 10, out.len);
+            section(out, methods);
+            return Arrays.copyOf(out.b, out.len);
+        }
+
+        void patch(Buf out, int at, int v) {
+            final int len = out.len;
+            out.len = at;
+            out.u32(v);
+            out.len = len;
+        }
+
+        void section(Buf out, List<Buf> items) {
+            out.varint(items.size());
+            int offset = out.len + 4 * items.size();
+            for (Buf item : items) {
+                out.u32(offset);
+                offset += item.len;
+            }
+            for (Buf item : items)
+                out.bytes(item.b, 0, item.len);
+        }
+
+        int str(String s) {
+            if (s == null)
+                return 0;
+            return index.computeIfAbsent(s, k -> {
+                strings.add(k);
+                return strings.size();
+            });
+        }
+
+        Buf data(IR.Data d) {
+            final var out = new Buf();
+            out.varint(str(d.name));
+            out.varint(d.fields.size());
+            for (IR.Field f : d.fields) {
+                out.varint(str(f.type));
+                out.varint(str(f.id));
+            }
+            return out;
+        }
+
+        Buf method(IR.Method m) {
+            final var out = new Buf();
+            out.varint(str(m.name));
+            out.varint(str(m.ret));
+            out.varint(m.params.size());
+            for (IR.Param p : m.params) {
+                out.varint(str(p.type));
+                out.varint(str(p.id));
+            }
+            out.varint(m.body.size());
+            for (IR.Stmt s : m.body)
+                stmt(out, s);
+            return out;
+        }
+
+        void stmt(Buf out, IR.Stmt s) {
+            if (s instanceof IR.Var) {
+                final var v = (IR.Var) s;
+                out.u8(VAR);
+                out.varint(str(v.type));
+                out.varint(str(v.name));
+            } else if (s instanceof IR.New) {
+                final var v = (IR.New) s;
+                out.u8(NEW);
+                out.varint(str(v.lhs));
+                out.varint(str(v.type));
+            } else if (s instanceof IR.Assignment) {
+                final var v = (IR.Assignment) s;
+                out.u8(ASSIGNMENT);
+                out.varint(str(v.lhs));
+                out.varint(str(v.rhs));
+            } else if (s instanceof IR.FieldAssignment) {
+                final var v = (IR.FieldAssignment) s;
+                out.u8(FIELD_ASSIGNMENT);
+                out.varint(str(v.lhs));
+                out.varint(str(v.id));
+                out.varint(str(v.rhs));
+            } else if (s instanceof IR.Lit) {
+                final var v = (IR.Lit) s;
+                out.u8(LIT);
+                out.varint(str(v.lhs));
+                literal(out, v.rhs);
+            } else if (s instanceof IR.BinOp) {
+                final var v = (IR.BinOp) s;
+                out.u8(BIN_OP);
+                out.varint(str(v.lhs));
+                out.varint(str(v.op));
+                out.varint(str(v.a));
+                out.varint(str(v.b));
+            } else if (s instanceof IR.UnOp) {
+                final var v = (IR.UnOp) s;
+                out.u8(UN_OP);
+                out.varint(str(v.lhs));
+                out.varint(str(v.op));
+                out.varint(str(v.rhs));
+            } else if (s instanceof IR.Access) {
+                final var v = (IR.Access) s;
+                out.u8(ACCESS);
+                out.varint(str(v.lhs));
+                out.varint(str(v.rhs));
+                out.varint(str(v.member));
+            } else if (s instanceof IR.Call) {
+                final var v = (IR.Call) s;
+                out.u8(CALL);
+                out.varint(str(v.lhs));
+                out.varint(str(v.rhs));
+                strs(out, v.args);
+            } else if (s instanceof IR.Syscall) {
+                final var v = (IR.Syscall) s;
+                out.u8(SYSCALL);
+                out.varint(str(v.lhs));
+                strs(out, v.args);
+            } else if (s instanceof IR.Return) {
+                out.u8(RETURN);
+                out.varint(str(((IR.Return) s).id));
+            } else if (s instanceof IR.Label) {
+                out.u8(LABEL);
+                out.varint(str(((IR.Label) s).name));
+            } else if (s instanceof IR.CondGoto) {
+                final var v = (IR.CondGoto) s;
+                out.u8(COND_GOTO);
+                out.varint(str(v.cond));
+                out.varint(str(v.target));
+            } else if (s instanceof IR.IfFalseGoto) {
+                final var v = (IR.IfFalseGoto) s;
+                out.u8(IF_FALSE_GOTO);
+                out.varint(str(v.cond));
+                out.varint(str(v.target));
+            } else if (s instanceof IR.CmpGoto) {
+                final var v = (IR.CmpGoto) s;
+                out.u8(CMP_GOTO);
+                out.varint(str(v.op));
+                out.varint(str(v.a));
+                out.varint(str(v.b));
+                out.varint(str(v.target));
+            } else if (s instanceof IR.Goto) {
+                out.u8(GOTO);
+                out.varint(str(((IR.Goto) s).label));
+            } else {
+                throw new IllegalArgumentException("unknown IR statement " + s.getClass().getName());
+            }
+        }
+
+        void strs(Buf out, List<String> ss) {
+            out.varint(ss.size());
+            for (String s : ss)
+                out.varint(str(s));
+        }
+
+        void literal(Buf out, Object v) {
+            if (v == null) {
+                out.u8(LIT_NULL);
+            } else if (v instanceof Integer) {
+                final int i = (Integer) v;
+                out.u8(LIT_INT);
+                out.varint((i << 1) ^ (i >> 31));
+            } else if (v instanceof Boolean) {
+                out.u8((Boolean) v ? LIT_TRUE : LIT_FALSE);
+            } else {
+                out.u8(LIT_STRING);
+                out.varint(str(v.toString()));
+            }
+        }
+    }
+
+    /**
+     * Decodes straight from the buffer with absolute reads, so the buffer
+     * (often a mapped file) is never copied and readers can be shared
+     * between threads. Strings are decoded once on first use.
+     */
+    public static class Reader {
+        final ByteBuffer buf;
+        final int[] stringOffsets;
+        final String[] strings;
+        final int decls;
+        final int methods;
+
+        Reader(ByteBuffer buf) {
+            this.buf = buf;
+            final var c = new Cursor(0);
+            for (byte m : MAGIC)
+                if (c.u8() != m)
+                    throw new IllegalArgumentException("not a binary IR file");
+            final int version = c.u16();
+            if (version != VERSION)
+                throw new IllegalArgumentException("unsupported binary IR version " + version);
+            c.pos += 8;
+
+            final int n = c.varint();
+            this.stringOffsets = new int[n];
+            this.strings = new String[n];
+            for (int i = 0; i < n; i++) {
+                stringOffsets[i] = c.pos;
+                final int len = c.varint();
+                c.pos += len;
+            }
+            this.decls = buf.getInt(6);
+            this.methods = buf.getInt(10);
+        }
+
+        public int dataCount() {
+            return new Cursor(decls).varint();
+        }
+
+        public int methodCount() {
+            return new Cursor(methods).varint();
+        }
+
+        public IR.Data data(int i) {
+            final var c = item(decls, i);
+            final var name = c.str();
+            final int n = c.varint();
+            final var fields = new ArrayList<IR.Field>(n);
+            for (int k = 0; k < n; k++)
+                fields.add(new IR.Field(c.str(), c.str()));
+            return new IR.Data(name, fields);
+        }
+
+        public String methodName(int i) {
+            return item(methods, i).str();
+        }
+
+        public IR.Method method(int i) {
+            final var c = item(methods, i);
+            final var name = c.str();
+            final var ret = c.str();
+            final int np = c.varint();
+            final var params = new ArrayList<IR.Param>(np);
+            for (int k = 0; k < np; k++)
+                params.add(new IR.Param(c.str(), c.str()));
+            final int ns = c.varint();
+            final var body = new ArrayList<IR.Stmt>(ns);
+            for (int k = 0; k < ns; k++)
+                body.add(stmt(c));
+            return new IR.Method(name, ret, params, body);
+        }
+
+        public IR.Program toProgram() {
+            final var ds = new ArrayList<IR.Data>();
+            for (int i = 0, n = dataCount(); i < n; i++)
+                ds.add(data(i));
+            final var ms = new ArrayList<IR.Method>();
+            for (int i = 0, n = methodCount(); i < n; i++)
+                ms.add(method(i));
+            return new IR.Program(ds, ms);
+        }
+
+        public String string(int index) {
+            if (index == 0)
+                return null;
+            final var s = strings[index - 1];
+            if (s != null)
+                return s;
+            final var c = new Cursor(stringOffsets[index - 1]);
+            final int len = c.varint();
+            final var b = new byte[len];
+            buf.get(c.pos, b);
+            return strings[index - 1] = new String(b, StandardCharsets.UTF_8);
+        }
+
+        Cursor item(int section, int i) {
+            final var c = new Cursor(section);
+            final int n = c.varint();
+            if (i < 0 || i >= n)
+                throw new IndexOutOfBoundsException(i);
+            return new Cursor(buf.getInt(c.pos + 4 * i));
+        }
+
+        IR.Stmt stmt(Cursor c) {
+            final int op = c.u8();
+            switch (op) {
+                case VAR:
+                    return new IR.Var(c.str(), c.str());
+                case NEW:
+                    return new IR.New(c.str(), c.str());
+                case ASSIGNMENT:
+                    return new IR.Assignment(c.str(), c.str());
+                case FIELD_ASSIGNMENT:
+                    return new IR.FieldAssignment(c.str(), c.str(), c.str());
+                case LIT:
+                    return new IR.Lit(c.str(), literal(c));
+                case BIN_OP:
+                    return new IR.BinOp(c.str(), c.str(), c.str(), c.str());
+                case UN_OP:
+                    return new IR.UnOp(c.str(), c.str(), c.str());
+                case ACCESS:
+                    return new IR.Access(c.str(), c.str(), c.str());
+                case CALL:
+                    return new IR.Call(c.str(), c.str(), c.strs());
+                case SYSCALL:
+                    return new IR.Syscall(c.str(), c.strs());
+                case RETURN:
+                    return new IR.Return(c.str());
+                case LABEL:
+                    return new IR.Label(c.str());
+                case COND_GOTO:
+                    return new IR.CondGoto(c.str(), c.str());
+                case GOTO:
+                    return new IR.Goto(c.str());
+                case IF_FALSE_GOTO:
+                    return new IR.IfFalseGoto(c.str(), c.str());
+                case CMP_GOTO:
+                    return new IR.CmpGoto(c.str(), c.str(), c.str(), c.str());
+                default:
+                    throw new IllegalArgumentException("unknown opcode " + op + " at " + (c.pos - 1));
+            }
+        }
+
+        Object literal(Cursor c) {
+            final int tag = c.u8();
+            switch (tag) {
+                case LIT_NULL:
+                    return null;
+                case LIT_INT:
+                    final int z = c.varint();
+                    return (z >>> 1) ^ -(z & 1);
+                case LIT_TRUE:
+                    return true;
+                case LIT_FALSE:
+                    return false;
+                case LIT_STRING:
+                    return c.str();
+                default:
+                    throw new IllegalArgumentException("unknown literal tag " + tag);
+            }
+        }
+
+        class Cursor {
+            int pos;
+
+            Cursor(int pos) {
+                this.pos = pos;
+            }
+
+            int u8() {
+                return buf.get(pos++) & 0xFF;
+            }
+
+            int u16() {
+                return (u8() << 8) | u8();
+            }
+
+            int varint() {
+                int v = 0;
+                for (int shift = 0; ; shift += 7) {
+                    final int b = u8();
+                    v |= (b & 0x7F) << shift;
+                    if ((b & 0x80) == 0)
+                        return v;
+                }
+            }
+
+            String str() {
+                return string(varint());
+            }
+
+            List<String> strs() {
+                final int n = varint();
+                final var out = new ArrayList<String>(n);
+                for (int i = 0; i < n; i++)
+                    out.add(str());
+                return out;
+            }
+        }
+    }
+}
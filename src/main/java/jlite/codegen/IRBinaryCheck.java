@@ -0,0 +1,100 @@
+package jlite.codegen;
+
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import jlite.json.JsonWriter;
+import jlite.json.TreeJson;
+import jlite.parser.parser;
+
+/**
+ * Round-trips the IR of each file through {@link IRBinary} and compares
+ * size and encode/decode time against the JSON output.
+ *
+ * <pre>
+ *   java -cp ... jlite.codegen.IRBinaryCheck [--iterations=N] file.j...
+ * </pre>
+ */
+public class IRBinaryCheck {
+    public static void main(String[] argv) throws Exception {
+        int iterations = 200;
+        boolean ok = true;
+        System.out.println(String.format("%-24s %10s %10s %12s %12s %12s %12s",
+                "file", "json B", "bin B", "json enc us", "json dec us", "bin enc us", "bin dec us"));
+        for (String arg : argv) {
+            if (arg.startsWith("--iterations=")) {
+                iterations = Integer.parseInt(arg.substring("--iterations=".length()));
+                continue;
+            }
+            try {
+                final var ir = IRGen.generateProgram(parser.parse(arg));
+                if (ir.isErr()) {
+                    System.out.println(String.format("%-24s skipped: %s", arg, ir.err));
+                    continue;
+                }
+                ok &= check(arg, ir.v, iterations);
+            } catch (Exception e) {
+                System.out.println(String.format("%-24s skipped: %s", arg, e));
+            }
+        }
+        if (!ok)
+            System.exit(1);
+    }
+
+    static boolean check(String name, IR.Program p, int iterations) throws IOException {
+        final var json = json(p);
+        final var bin = IRBinary.write(p);
+
+        final var tmp = Files.createTempFile("jlite", ".jir");
+        final String mapped;
+        try {
+            Files.write(tmp, bin);
+            mapped = json(IRBinary.map(tmp).toProgram());
+        } finally {
+            Files.delete(tmp);
+        }
+        final var decoded = json(IRBinary.read(ByteBuffer.wrap(bin)).toProgram());
+        if (!json.equals(decoded) || !json.equals(mapped)) {
+            System.out.println(String.format("%-24s round trip MISMATCH", name));
+            return false;
+        }
+
+        final long jsonEnc = time(iterations, () -> json(p).length());
+        final long jsonDec = time(iterations, () -> new JsonParser().parse(json).hashCode());
+        final long binEnc = time(iterations, () -> IRBinary.write(p).length);
+        final long binDec = time(iterations, () -> IRBinary.read(ByteBuffer.wrap(bin)).toProgram().methods.size());
+        System.out.println(String.format("%-24s %10d %10d %12.1f %12.1f %12.1f %12.1f",
+                name, json.getBytes(StandardCharsets.UTF_8).length, bin.length,
+                jsonEnc / 1e3, jsonDec / 1e3, binEnc / 1e3, binDec / 1e3));
+        return true;
+    }
+
+    static String json(IR.Program p) throws IOException {
+        final var out = new StringWriter();
+        final var w = new JsonWriter(out, false);
+        new TreeJson(w).write(p);
+        w.flush();
+        return out.toString();
+    }
+
+    interface Work {
+        int run() throws IOException;
+    }
+
+    static int sink;
+
+    // average nanoseconds per run, after an equal number of warm-up runs
+    static long time(int iterations, Work work) throws IOException {
+        for (int i = 0; i < iterations; i++)
+            sink += work.run();
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            sink += work.run();
+        return (System.nanoTime() - start) / Math.max(1, iterations);
+    }
+}
@@ -2,43 +2,62 @@ package jlite.codegen;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import jlite.Env;
+import jlite.TypeIndexer;
+import jlite.fp.Pair;
+import jlite.fp.Result;
 import jlite.parser.Ast;
 import jlite.type_check.Checker;
+import jlite.type_check.TypeTable;
 
-import java.util.HashSet;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class IRGen {
-    static int lid = 0;
-
-    public static String randstr() {
-        return "__" + String.valueOf(++lid);
-//        return "__" + new Random().ints(96 + 1, 96 + 26 + 1)
-//                .limit(12)
-//                .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
-//                .toString();
+    public static Result<IR.Program> generateProgram(Ast.Program p) {
+        return generateProgram(p, TypeIndexer.index(p), (c, m) -> null);
     }
 
-    public static IR.Program generateProgram(Ast.Program p) {
-        final var hints = Checker.check(p);
-        if (hints.isErr()) {
-            System.out.println(hints.err.toString());
-            return null;
-        }
-        HintedEnv e = new HintedEnv(hints.v, ImmutableSet.of());
-
+    // `reuse` may hand back a method generated by an earlier compilation,
+    // which is then neither checked nor generated again
+    public static Result<IR.Program> generateProgram(
+            Ast.Program p, Env env, BiFunction<Ast.Cls, Ast.Method, IR.Method> reuse) {
+        // same order as TypeIndexer, so decls and methods line up with Env ids
         final var classes = new ImmutableList.Builder<Ast.Cls>().add(p.main).addAll(p.classes).build();
-        return new IR.Program(
+        final var methods = classes.stream()
+                .flatMap(c -> c.methods.stream().map(m -> new Pair<>(c, m)))
+                .collect(Collectors.toList());
+        final var reused = methods.parallelStream()
+                .map(cm -> reuse.apply(cm.first, cm.second))
+                .collect(Collectors.toList());
+
+        final var todo = new BitSet(p.size);
+        for (int i = 0; i < methods.size(); i++)
+            if (reused.get(i) == null)
+                todo.set(methods.get(i).second.nid());
+        final var hints = Checker.check(env, p, m -> todo.get(m.nid()));
+        if (hints.isErr())
+            return Result.err(hints.err);
+        // each method gets its own Names in genMethod
+        HintedEnv e = new HintedEnv(hints.v, ImmutableSet.of(), null);
+
+        return Result.of(new IR.Program(
                 classes.stream()
                         .map(IRGen::genData)
                         .collect(Collectors.toList()),
-                classes.stream()
-                        .flatMap(c -> c.methods.stream().map(m -> genMethod(e, c, m)))
+                IntStream.range(0, methods.size()).parallel()
+                        .mapToObj(i -> reused.get(i) != null
+                                ? reused.get(i)
+                                : genMethod(e, methods.get(i).first, methods.get(i).second))
                         .collect(Collectors.toList())
-        );
+        ));
     }
 
     public static IR.Data genData(Ast.Cls c) {
@@ -48,7 +67,10 @@ public class IRGen {
         );
     }
 
+    // temps and labels are numbered per method, so every method comes out
+    // the same whichever thread generates it and in whatever order
     public static IR.Method genMethod(HintedEnv e, Ast.Cls c, Ast.Method m) {
+        e = new HintedEnv(e.hints, e.locals, new Names());
         e = e.update(m.body.vars.stream().map(var -> var.id.id).collect(Collectors.toSet()));
         e = e.update(m.params.stream().map(p -> p.id.id).collect(Collectors.toSet()));
         e = e.update(Set.of("this"));
@@ -57,6 +79,7 @@ public class IRGen {
                 .map(s -> genStmt(env, s))
                 .collect(Collectors.toList());
         final var stmts = new ImmutableList.Builder<IR.Stmt>()
+                .addAll(m.body.vars.stream().map(v -> new IR.Var(v.type.name, v.id.id)).collect(Collectors.toList()))
                 .addAll(gens.stream().flatMap(g -> g.vars.stream()).collect(Collectors.toList()))
                 .addAll(gens.stream().flatMap(g -> g.stmts.stream()).collect(Collectors.toList()))
                 .build();
@@ -122,31 +145,39 @@ public class IRGen {
                                         .collect(Collectors.toList())
                         )
                         .add(new IR.Syscall(s.name, args.stream().map(arg -> arg.ret).collect(Collectors.toList())))
+                        .addAll(readlnField(e, s, args))
                         .build()
         );
     }
 
+    // genId loads a field into a temp, so readln into a field reads into
+    // that temp and has to store it back
+    static List<IR.Stmt> readlnField(HintedEnv e, Ast.Syscall s, List<Gcode> args) {
+        if (!s.name.equals("readln") || !(s.args.get(0) instanceof Ast.Id))
+            return List.of();
+        final var id = ((Ast.Id) s.args.get(0)).id;
+        if (e.locals.contains(id))
+            return List.of();
+        return List.of(new IR.FieldAssignment("this", id, args.get(0).ret));
+    }
+
     public static Gcode genWhile(HintedEnv e, Ast.While w) {
-        final var notCond = randstr();
-        final var startLabel = randstr();
-        final var endLabel = randstr();
+        final var startLabel = e.randstr();
+        final var endLabel = e.randstr();
 
-        final var cond = genExpr(e, w.cond);
+        final var cond = genJumpUnless(e, w.cond, endLabel);
         final var block = genBlock(e, w.block);
 
         return new Gcode(
                 null,
                 new ImmutableList.Builder<IR.Var>()
                         .addAll(cond.vars)
-                        .add(new IR.Var("Bool", notCond))
                         .addAll(block.vars)
                         .build()
                 ,
                 new ImmutableList.Builder<IR.Stmt>()
                         .add(new IR.Label(startLabel))
                         .addAll(cond.stmts)
-                        .add(new IR.UnOp(notCond, "!", cond.ret))
-                        .add(new IR.CondGoto(notCond, endLabel))
                         .addAll(block.stmts)
                         .add(new IR.Goto(startLabel))
                         .add(new IR.Label(endLabel))
@@ -155,11 +186,10 @@ public class IRGen {
     }
 
     public static Gcode genIf(HintedEnv e, Ast.If c) {
-        final var notCond = randstr();
-        final var altLabel = randstr();
-        final var endLabel = randstr();
+        final var altLabel = e.randstr();
+        final var endLabel = e.randstr();
 
-        final var cond = genExpr(e, c.cond);
+        final var cond = genJumpUnless(e, c.cond, altLabel);
         final var cons = genBlock(e, c.cons);
         final var alt = genBlock(e, c.alt);
 
@@ -167,14 +197,11 @@ public class IRGen {
                 null,
                 new ImmutableList.Builder<IR.Var>()
                         .addAll(cond.vars)
-                        .add(new IR.Var("Bool", notCond))
                         .addAll(cons.vars)
                         .addAll(alt.vars)
                         .build(),
                 new ImmutableList.Builder<IR.Stmt>()
                         .addAll(cond.stmts)
-                        .add(new IR.UnOp(notCond, "!", cond.ret))
-                        .add(new IR.CondGoto(notCond, altLabel))
                         .addAll(cons.stmts)
                         .add(new IR.Goto(endLabel))
                         .add(new IR.Label(altLabel))
@@ -184,7 +211,57 @@ public class IRGen {
         );
     }
 
+    // each comparison a jump can make itself, and its negation
+    static final Map<String, String> NEGATED = Map.of(
+            "<", ">=", "<=", ">", ">", "<=", ">=", "<", "==", "!=", "!=", "==");
+
+    // jumps to `target` unless `cond` holds; comparisons of Int or Bool
+    // operands and negations branch directly instead of through a Bool temp
+    static Gcode genJumpUnless(HintedEnv e, Ast.Expr cond, String target) {
+        if (cond instanceof Ast.BinOp && NEGATED.containsKey(((Ast.BinOp) cond).op)) {
+            final var b = (Ast.BinOp) cond;
+            final var type = e.typeof(b.l);
+            if ("Int".equals(type) || "Bool".equals(type)) {
+                final var lhs = genExpr(e, b.l);
+                final var rhs = genExpr(e, b.r);
+                return new Gcode(
+                        null,
+                        new ImmutableList.Builder<IR.Var>()
+                                .addAll(lhs.vars)
+                                .addAll(rhs.vars)
+                                .build(),
+                        new ImmutableList.Builder<IR.Stmt>()
+                                .addAll(lhs.stmts)
+                                .addAll(rhs.stmts)
+                                .add(new IR.CmpGoto(NEGATED.get(b.op), lhs.ret, rhs.ret, target))
+                                .build()
+                );
+            }
+        }
+        if (cond instanceof Ast.UnOp && ((Ast.UnOp) cond).op.equals("!")) {
+            final var inner = genExpr(e, ((Ast.UnOp) cond).e);
+            return new Gcode(
+                    null,
+                    inner.vars,
+                    new ImmutableList.Builder<IR.Stmt>()
+                            .addAll(inner.stmts)
+                            .add(new IR.CondGoto(inner.ret, target))
+                            .build()
+            );
+        }
+        final var c = genExpr(e, cond);
+        return new Gcode(
+                null,
+                c.vars,
+                new ImmutableList.Builder<IR.Stmt>()
+                        .addAll(c.stmts)
+                        .add(new IR.IfFalseGoto(c.ret, target))
+                        .build()
+        );
+    }
+
     public static Gcode genAssignment(HintedEnv e, Ast.Assignment s) {
+        final var lhs = ((Ast.Id) s.lhs).id;
         final var rhs = genExpr(e, s.rhs);
         return new Gcode(
                 null,
@@ -193,7 +270,9 @@ public class IRGen {
                         .build(),
                 new ImmutableList.Builder<IR.Stmt>()
                         .addAll(rhs.stmts)
-                        .add(new IR.FieldAssignment("this", ((Ast.Id) s.lhs).id, rhs.ret))
+                        .add(e.locals.contains(lhs)
+                                ? new IR.Assignment(lhs, rhs.ret)
+                                : new IR.FieldAssignment("this", lhs, rhs.ret))
                         .build()
         );
     }
@@ -257,7 +336,7 @@ public class IRGen {
         if (e.locals.contains(ex.id))
             return new Gcode(ex.id, ImmutableList.of(), ImmutableList.of());
 
-        final var res = randstr();
+        final var res = e.randstr();
         return new Gcode(
                 res,
                 ImmutableList.of(new IR.Var(e.typeof(ex), res)),
@@ -266,7 +345,7 @@ public class IRGen {
     }
 
     public static Gcode genLit(HintedEnv e, Ast.Lit ex) {
-        final var res = randstr();
+        final var res = e.randstr();
         return new Gcode(
                 res,
                 List.of(new IR.Var(e.typeof(ex), res)),
@@ -275,7 +354,7 @@ public class IRGen {
     }
 
     public static Gcode genBinOp(HintedEnv e, Ast.BinOp ex) {
-        final var res = randstr();
+        final var res = e.randstr();
         final var lhs = genExpr(e, ex.l);
         final var rhs = genExpr(e, ex.r);
         return new Gcode(
@@ -295,11 +374,14 @@ public class IRGen {
     }
 
     public static Gcode genUnOp(HintedEnv e, Ast.UnOp ex) {
-        final var res = randstr();
+        final var res = e.randstr();
         final var rhs = genExpr(e, ex.e);
         return new Gcode(
                 res,
-                List.of(new IR.Var(e.typeof(ex), res)),
+                new ImmutableList.Builder<IR.Var>()
+                        .addAll(rhs.vars)
+                        .add(new IR.Var(e.typeof(ex), res))
+                        .build(),
                 new ImmutableList.Builder<IR.Stmt>()
                         .addAll(rhs.stmts)
                         .add(new IR.UnOp(res, ex.op, rhs.ret))
@@ -308,7 +390,7 @@ public class IRGen {
     }
 
     public static Gcode genNew(HintedEnv e, Ast.New ex) {
-        final var res = randstr();
+        final var res = e.randstr();
         return new Gcode(
                 res,
                 List.of(new IR.Var(ex.name, res)),
@@ -317,7 +399,7 @@ public class IRGen {
     }
 
     public static Gcode genAccess(HintedEnv e, Ast.Access ex) {
-        final var res = randstr();
+        final var res = e.randstr();
         final var rhs = genExpr(e, ex.e);
         return new Gcode(
                 res,
@@ -333,7 +415,7 @@ public class IRGen {
     }
 
     public static Gcode genCall(HintedEnv e, Ast.Call ex) {
-        final var res = randstr();
+        final var res = e.randstr();
         final var args = ex.args.stream().map(arg -> genExpr(e, arg)).collect(Collectors.toList());
 
         if (ex.callee instanceof Ast.Id) {
@@ -408,23 +490,39 @@ public class IRGen {
         }
     }
 
+    public static class Names {
+        private int lid = 0;
+
+        public String next() {
+            return "__" + String.valueOf(++lid);
+        }
+    }
+
     public static class HintedEnv {
-        public final Map<Ast.Node, String> hints;
+        public final TypeTable hints;
         public final Set<String> locals;
+        public final Names names;
 
-        public HintedEnv(Map<Ast.Node, String> hints, Set<String> locals) {
+        public HintedEnv(TypeTable hints, Set<String> locals, Names names) {
             this.hints = hints;
             this.locals = locals;
+            this.names = names;
         }
 
         public String typeof(Ast.Node n) {
-            return hints.get(n);
+            return hints.name(n);
+        }
+
+        public String randstr() {
+            return names.next();
         }
 
+        // names are interned by the scanner, so locals are compared by identity
         public HintedEnv update(Set<String> locals) {
-            Set<String> l = new HashSet<>(this.locals);
+            Set<String> l = Collections.newSetFromMap(new IdentityHashMap<>());
+            l.addAll(this.locals);
             l.addAll(locals);
-            return new HintedEnv(hints, l);
+            return new HintedEnv(hints, l, names);
         }
     }
 }
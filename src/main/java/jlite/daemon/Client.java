@@ -0,0 +1,55 @@
+package jlite.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+
+/**
+ * Thin client for {@link Daemon}.
+ *
+ * <pre>
+ *   jlite.daemon.Client /tmp/jlite.sock a.j b.j [--stats] [--shutdown]
+ * </pre>
+ */
+public class Client {
+    public static void main(String[] argv) throws IOException {
+        if (argv.length == 0) {
+            System.err.println("usage: Client <socket> [file.j | --stats | --shutdown]...");
+            System.exit(2);
+        }
+
+        int status = Frames.OK;
+        try (var ch = SocketChannel.open(UnixDomainSocketAddress.of(argv[0]))) {
+            final var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch)));
+            final var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+            // every request goes out first, so the daemon compiles them in
+            // parallel; the answers come back in order
+            for (int i = 1; i < argv.length; i++) {
+                final String req;
+                if (argv[i].equals("--stats"))
+                    req = "stats";
+                else if (argv[i].equals("--shutdown"))
+                    req = "shutdown";
+                else
+                    req = "compile " + Paths.get(argv[i]).toAbsolutePath();
+                Frames.write(out, req);
+            }
+            out.flush();
+
+            for (int i = 1; i < argv.length; i++) {
+                status = Math.max(status, in.readInt());
+                System.out.write(Frames.read(in));
+                System.out.flush();
+                System.err.write(Frames.read(in));
+                System.err.flush();
+            }
+        }
+        System.exit(status);
+    }
+}
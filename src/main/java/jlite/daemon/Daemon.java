@@ -0,0 +1,234 @@
+package jlite.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import jlite.App;
+import jlite.cache.CompileCache;
+
+/**
+ * Resident compiler. Parser tables and the JIT stay warm
+ * between requests, so each request only pays for the compile itself.
+ *
+ * <pre>
+ *   jlite.App --serve=/tmp/jlite.sock   # unix domain socket
+ *   jlite.App --serve                   # frames over stdin/stdout
+ * </pre>
+ */
+public class Daemon {
+    static final String WARMUP_PROGRAM = String.join("\n",
+            "class Main {",
+            "  Void main(Int x) {",
+            "    Counter c;",
+            "    c = new Counter();",
+            "    while (x > 0) { x = c.step(x); }",
+            "    println(\"done\");",
+            "  }",
+            "}",
+            "class Counter {",
+            "  Int n;",
+            "  Int step(Int x) {",
+            "    n = n + 1;",
+            "    if (x > 10 && !(x == 11)) { return x - 2; } else { return x - 1; }",
+            "  }",
+            "}");
+
+    final App.Options options = new App.Options();
+    final ExecutorService pool;
+    final Latencies latencies = new Latencies(1 << 14);
+    volatile boolean running = true;
+    volatile ServerSocketChannel server;
+
+    Daemon(int threads) {
+        this.pool = Executors.newFixedThreadPool(threads);
+    }
+
+    public static void main(String[] argv) throws Exception {
+        String socket = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int warmup = 200;
+        String cache = null;
+        for (String arg : argv) {
+            if (arg.startsWith("--serve="))
+                socket = arg.substring("--serve=".length());
+            else if (arg.startsWith("--threads="))
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            else if (arg.startsWith("--warmup="))
+                warmup = Integer.parseInt(arg.substring("--warmup=".length()));
+            else if (arg.startsWith("--cache="))
+                cache = arg.substring("--cache=".length());
+        }
+
+        final var stdin = new FileInputStream(FileDescriptor.in);
+        final var stdout = new FileOutputStream(FileDescriptor.out);
+        App.routeStdio();
+
+        final var daemon = new Daemon(threads);
+        try {
+            daemon.warmUp(warmup);
+            // after warming up, so the warm-up program stays out of the cache
+            if (cache != null)
+                daemon.options.cache = new CompileCache(Paths.get(cache), 256 << 20);
+            if (socket == null)
+                daemon.serve(stdin, stdout);
+            else
+                daemon.serve(Paths.get(socket));
+        } finally {
+            daemon.pool.shutdownNow();
+            System.err.println(daemon.latencies);
+        }
+    }
+
+    void warmUp(int iterations) throws IOException {
+        final var file = Files.createTempFile("jlite-warmup", ".j");
+        try {
+            Files.writeString(file, WARMUP_PROGRAM);
+            for (int i = 0; i < iterations; i++)
+                App.Output.of(file.toString(), options);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    void serve(InputStream in, OutputStream out) throws IOException {
+        session(new DataInputStream(new BufferedInputStream(in)),
+                new DataOutputStream(new BufferedOutputStream(out)));
+    }
+
+    void serve(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        final var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        this.server = server;
+        try (server) {
+            server.bind(UnixDomainSocketAddress.of(path));
+            while (running) {
+                final SocketChannel ch = server.accept();
+                // sessions only read requests and write answers; the pool
+                // is kept for the compiles themselves
+                final var session = new Thread(() -> {
+                    try (ch) {
+                        session(new DataInputStream(new BufferedInputStream(Frames.input(ch))),
+                                new DataOutputStream(new BufferedOutputStream(Frames.output(ch))));
+                        if (!running)
+                            server.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }, "jlite-session");
+                // idle clients must not keep a shut down daemon alive
+                session.setDaemon(true);
+                session.start();
+            }
+        } catch (ClosedChannelException e) {
+            // a shutdown may close the server before or during accept()
+            if (running) throw e;
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    // an answer still being computed; answers are written in request order
+    interface Pending {
+        Response get() throws Exception;
+    }
+
+    static class Response {
+        final int status;
+        final byte[] out;
+        final byte[] err;
+
+        Response(int status, byte[] out, byte[] err) {
+            this.status = status;
+            this.out = out;
+            this.err = err;
+        }
+    }
+
+    static final Pending END = () -> null;
+
+    // reads requests as they come and hands each compile to the pool, so a
+    // client may send several before reading any answer; a writer thread
+    // answers them in order
+    void session(DataInputStream in, DataOutputStream out) throws IOException {
+        final var pending = new LinkedBlockingQueue<Pending>();
+        final var writer = new Thread(() -> answer(pending, out), "jlite-answers");
+        writer.setDaemon(true);
+        writer.start();
+        try {
+            for (String req; running && (req = Frames.readString(in)) != null; )
+                pending.add(handle(req));
+        } finally {
+            pending.add(END);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    static void answer(BlockingQueue<Pending> pending, DataOutputStream out) {
+        try {
+            for (var p = pending.take(); p != END; p = pending.take()) {
+                Response r;
+                try {
+                    r = p.get();
+                } catch (Exception e) {
+                    r = new Response(Frames.FAILED, new byte[0], (e + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                Frames.respond(out, r.status, r.out, r.err);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // the client went away; its remaining answers are dropped
+        }
+    }
+
+    Pending handle(String req) {
+        if (req.startsWith("compile ")) {
+            final var answer = pool.submit(() -> {
+                final long start = System.nanoTime();
+                final var output = App.Output.of(req.substring("compile ".length()), options);
+                latencies.record(System.nanoTime() - start);
+                return new Response(output.err.length == 0 ? Frames.OK : Frames.FAILED, output.out, output.err);
+            });
+            return answer::get;
+        }
+        if (req.equals("stats")) {
+            // computed once the answers before it are written
+            return () -> {
+                final var stats = options.cache != null ? latencies + "\n" + options.cache : latencies.toString();
+                return new Response(Frames.OK, (stats + "\n").getBytes(StandardCharsets.UTF_8), new byte[0]);
+            };
+        }
+        if (req.equals("shutdown")) {
+            // the session ends here; whoever served it then closes the server
+            running = false;
+            return () -> new Response(Frames.OK, new byte[0], new byte[0]);
+        }
+        final var err = ("unknown request: " + req + "\n").getBytes(StandardCharsets.UTF_8);
+        return () -> new Response(Frames.FAILED, new byte[0], err);
+    }
+}
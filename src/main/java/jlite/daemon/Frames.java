@@ -0,0 +1,90 @@
+package jlite.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Length-prefixed frames shared by {@link Daemon} and {@link Client}.
+ *
+ * A request is a single text frame, {@code compile <path>}, {@code stats} or
+ * {@code shutdown}. A response is an int status followed by a stdout frame
+ * and a stderr frame.
+ */
+public class Frames {
+    public static final int OK = 0;
+    public static final int FAILED = 1;
+
+    public static void write(DataOutputStream out, byte[] b) throws IOException {
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    public static void write(DataOutputStream out, String s) throws IOException {
+        write(out, s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static byte[] read(DataInputStream in) throws IOException {
+        final int len;
+        try {
+            len = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        final var b = new byte[len];
+        in.readFully(b);
+        return b;
+    }
+
+    public static String readString(DataInputStream in) throws IOException {
+        final var b = read(in);
+        return b == null ? null : new String(b, StandardCharsets.UTF_8);
+    }
+
+    public static void respond(DataOutputStream out, int status, byte[] stdout, byte[] stderr) throws IOException {
+        out.writeInt(status);
+        write(out, stdout);
+        write(out, stderr);
+        out.flush();
+    }
+
+    // Channels.newInputStream and newOutputStream share the channel's
+    // blocking lock, so a read waiting for the next request would hold up
+    // every answer; these call the channel directly
+    public static InputStream input(SocketChannel ch) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                final var b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return len == 0 ? 0 : ch.read(ByteBuffer.wrap(b, off, len));
+            }
+        };
+    }
+
+    public static OutputStream output(SocketChannel ch) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                final var buf = ByteBuffer.wrap(b, off, len);
+                while (buf.hasRemaining())
+                    ch.write(buf);
+            }
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package jlite.daemon;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent request latencies in a ring buffer.
+ */
+public class Latencies {
+    private final long[] ring;
+    private long count = 0;
+
+    public Latencies(int capacity) {
+        this.ring = new long[capacity];
+    }
+
+    public synchronized void record(long nanos) {
+        ring[(int) (count++ % ring.length)] = nanos;
+    }
+
+    public synchronized long count() {
+        return count;
+    }
+
+    public synchronized long percentile(double p) {
+        final int n = (int) Math.min(count, ring.length);
+        if (n == 0) return 0;
+        final var sorted = Arrays.copyOf(ring, n);
+        Arrays.sort(sorted);
+        return sorted[Math.max(0, Math.min(n - 1, (int) Math.ceil(p * n) - 1))];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("requests: %d, p50: %.3fms, p99: %.3fms",
+                count(), percentile(0.50) / 1e6, percentile(0.99) / 1e6);
+    }
+}
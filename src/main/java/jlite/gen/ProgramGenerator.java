@@ -0,0 +1,267 @@
+package jlite.gen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates valid, terminating JLite programs of a configurable size.
+ *
+ * Every class has the same field layout ({@code f0: Int, f1: Bool,
+ * f2: String, ...}) and a {@code peer} field pointing at the next class.
+ * Method {@code m<j>} only calls {@code m<j+1>} of the same class and only
+ * outside loops, and loops count a dedicated counter up to a constant, so
+ * the programs also run quickly. Output only depends on the config.
+ *
+ * <pre>
+ *   java -cp ... jlite.gen.ProgramGenerator --classes=64 --statements=40 > big.j
+ * </pre>
+ */
+public class ProgramGenerator {
+    public static class Config {
+        public int classes = 4;
+        public int fields = 6;
+        public int methods = 3;
+        public int statements = 12;
+        public int exprDepth = 3;
+        public int loopNesting = 2;
+        public int loopBound = 3;
+        public long seed = 1;
+
+        public Config scale(int classFactor, int statementFactor) {
+            final var c = new Config();
+            c.classes = classes * classFactor;
+            c.fields = fields;
+            c.methods = methods;
+            c.statements = statements * statementFactor;
+            c.exprDepth = exprDepth;
+            c.loopNesting = loopNesting;
+            c.loopBound = loopBound;
+            c.seed = seed;
+            return c;
+        }
+    }
+
+    static final String[] FIELD_TYPES = {"Int", "Bool", "String"};
+
+    final Config c;
+    final Random rnd;
+    final StringBuilder sb = new StringBuilder();
+
+    final List<String> ints = new ArrayList<>();
+    final List<String> bools = new ArrayList<>();
+    final List<String> strings = new ArrayList<>();
+    final List<String> intTargets = new ArrayList<>();
+    final List<String> boolTargets = new ArrayList<>();
+    final List<String> stringTargets = new ArrayList<>();
+    int budget;
+    int indent;
+
+    ProgramGenerator(Config c) {
+        this.c = c;
+        this.rnd = new Random(c.seed);
+    }
+
+    public static String generate(Config c) {
+        return new ProgramGenerator(c).program();
+    }
+
+    public static void main(String[] argv) {
+        final var c = new Config();
+        for (String arg : argv) {
+            final var kv = arg.replaceFirst("^--", "").split("=", 2);
+            final int v = Integer.parseInt(kv[1]);
+            switch (kv[0]) {
+                case "classes": c.classes = v; break;
+                case "fields": c.fields = v; break;
+                case "methods": c.methods = v; break;
+                case "statements": c.statements = v; break;
+                case "depth": c.exprDepth = v; break;
+                case "nesting": c.loopNesting = v; break;
+                case "bound": c.loopBound = v; break;
+                case "seed": c.seed = v; break;
+                default: throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+        System.out.print(generate(c));
+    }
+
+    String program() {
+        line("class Main {");
+        indent++;
+        line("Void main() {");
+        indent++;
+        for (int i = 0; i < c.classes; i++)
+            line("C%d o%d;", i, i);
+        for (int i = 0; i < c.classes; i++) {
+            line("o%d = new C%d();", i, i);
+            line("println(o%d.m0(%d, %d));", i, i, rnd.nextInt(100));
+        }
+        indent--;
+        line("}");
+        indent--;
+        line("}");
+
+        for (int i = 0; i < c.classes; i++)
+            cls(i);
+        return sb.toString();
+    }
+
+    void cls(int i) {
+        line("class C%d {", i);
+        indent++;
+        for (int k = 0; k < c.fields; k++)
+            line("%s f%d;", FIELD_TYPES[k % FIELD_TYPES.length], k);
+        line("C%d peer;", (i + 1) % c.classes);
+        for (int j = 0; j < c.methods; j++)
+            method(i, j);
+        indent--;
+        line("}");
+    }
+
+    void method(int i, int j) {
+        line("Int m%d(Int p0, Int p1) {", j);
+        indent++;
+        line("Int l0;");
+        line("Int l1;");
+        line("Bool l2;");
+        line("String l3;");
+        line("String l4;");
+        for (int d = 0; d < c.loopNesting; d++)
+            line("Int i%d;", d);
+
+        ints.clear();
+        bools.clear();
+        strings.clear();
+        intTargets.clear();
+        boolTargets.clear();
+        stringTargets.clear();
+        ints.addAll(List.of("p0", "p1", "l0", "l1"));
+        intTargets.addAll(List.of("l0", "l1"));
+        bools.add("l2");
+        boolTargets.add("l2");
+        strings.addAll(List.of("l3", "l4"));
+        stringTargets.addAll(List.of("l3", "l4"));
+        for (int k = 0; k < c.fields; k++) {
+            final var type = FIELD_TYPES[k % FIELD_TYPES.length];
+            final var name = "f" + k;
+            if (type.equals("Int")) {
+                ints.add(name);
+                ints.add("peer." + name);
+                intTargets.add(name);
+            } else if (type.equals("Bool")) {
+                bools.add(name);
+                bools.add("peer." + name);
+                boolTargets.add(name);
+            } else {
+                // string fields may still be null, so they are only written
+                stringTargets.add(name);
+            }
+        }
+
+        line("peer = new C%d();", (i + 1) % c.classes);
+        line("l0 = %d;", rnd.nextInt(10));
+        line("l1 = p0;");
+        line("l2 = %s;", rnd.nextBoolean());
+        line("l3 = \"s%d\";", rnd.nextInt(100));
+        line("l4 = \"t%d\";", rnd.nextInt(100));
+
+        budget = c.statements;
+        while (budget > 0)
+            stmt(0, 0);
+        if (j + 1 < c.methods)
+            line("l0 = l0 + this.m%d(%s, %s);", j + 1, intExpr(1), intExpr(1));
+        line("return l0 + l1;");
+        indent--;
+        line("}");
+    }
+
+    void stmt(int loops, int ifs) {
+        budget--;
+        final int kind = rnd.nextInt(10);
+        if (kind < 2 && loops < c.loopNesting && budget > 1) {
+            final var counter = "i" + loops;
+            line("%s = 0;", counter);
+            line("while (%s < %d) {", counter, c.loopBound);
+            indent++;
+            ints.add(counter);
+            block(loops + 1, ifs);
+            line("%s = %s + 1;", counter, counter);
+            ints.remove(ints.size() - 1);
+            indent--;
+            line("}");
+        } else if (kind < 4 && ifs < 2 && budget > 1) {
+            line("if (%s) {", boolExpr(c.exprDepth));
+            indent++;
+            block(loops, ifs + 1);
+            indent--;
+            line("} else {");
+            indent++;
+            block(loops, ifs + 1);
+            indent--;
+            line("}");
+        } else if (kind < 6) {
+            line("%s = %s;", pick(intTargets), intExpr(c.exprDepth));
+        } else if (kind < 7) {
+            line("%s = %s;", pick(boolTargets), boolExpr(c.exprDepth));
+        } else if (kind < 8) {
+            line("%s = %s;", pick(stringTargets), stringExpr(2));
+        } else if (kind < 9) {
+            line("peer.f0 = %s;", intExpr(c.exprDepth));
+        } else {
+            final int t = rnd.nextInt(3);
+            line("println(%s);", t == 0 ? intExpr(c.exprDepth) : t == 1 ? boolExpr(c.exprDepth) : stringExpr(2));
+        }
+    }
+
+    void block(int loops, int ifs) {
+        final int n = 1 + rnd.nextInt(Math.max(1, Math.min(budget, 4)));
+        for (int i = 0; i < n && (i == 0 || budget > 0); i++)
+            stmt(loops, ifs);
+    }
+
+    String intExpr(int depth) {
+        if (depth <= 0 || rnd.nextInt(4) == 0)
+            return rnd.nextBoolean() ? String.valueOf(rnd.nextInt(100)) : pick(ints);
+        switch (rnd.nextInt(6)) {
+            case 0:
+                return String.format("(-%s)", intExpr(depth - 1));
+            case 1:
+                return String.format("(%s / %d)", intExpr(depth - 1), 1 + rnd.nextInt(9));
+            default:
+                return String.format("(%s %s %s)",
+                        intExpr(depth - 1), pick(List.of("+", "-", "*")), intExpr(depth - 1));
+        }
+    }
+
+    String boolExpr(int depth) {
+        if (depth <= 0 || rnd.nextInt(4) == 0)
+            return rnd.nextInt(3) == 0 ? String.valueOf(rnd.nextBoolean()) : pick(bools);
+        switch (rnd.nextInt(4)) {
+            case 0:
+                return String.format("(!%s)", boolExpr(depth - 1));
+            case 1:
+                return String.format("(%s %s %s)",
+                        boolExpr(depth - 1), pick(List.of("&&", "||")), boolExpr(depth - 1));
+            default:
+                return String.format("(%s %s %s)",
+                        intExpr(depth - 1), pick(List.of("<", "<=", ">", ">=", "==", "!=")), intExpr(depth - 1));
+        }
+    }
+
+    String stringExpr(int depth) {
+        if (depth <= 0 || rnd.nextInt(3) == 0)
+            return rnd.nextBoolean() ? String.format("(\"w%d\")", rnd.nextInt(100)) : pick(strings);
+        return String.format("(%s + %s)", stringExpr(depth - 1), stringExpr(depth - 1));
+    }
+
+    String pick(List<String> options) {
+        return options.get(rnd.nextInt(options.size()));
+    }
+
+    void line(String format, Object... args) {
+        for (int i = 0; i < indent; i++)
+            sb.append("  ");
+        sb.append(String.format(format, args)).append('\n');
+    }
+}
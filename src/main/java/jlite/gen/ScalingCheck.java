@@ -0,0 +1,173 @@
+package jlite.gen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java_cup.runtime.Symbol;
+import jlite.StaticChecker;
+import jlite.TypeIndexer;
+import jlite.codegen.IRGen;
+import jlite.lexer.Scanner;
+import jlite.parser.Ast;
+import jlite.parser.Source;
+import jlite.parser.Symbols;
+import jlite.parser.parser;
+import jlite.parser.sym;
+import jlite.type_check.Checker;
+
+/**
+ * Complexity regression check. Compiles generated programs at 1x to 16x a
+ * base size, once growing the number of classes and once growing the
+ * length of every method, and fits the log-log slope of each phase's time
+ * against size by least squares over the three largest sizes, where a
+ * superlinear term has outgrown the fixed costs that flatten the small
+ * ones. Linear phases come out near 1, quadratic ones near 2; the check
+ * fails when a phase's slope exceeds {@code --max-slope}.
+ *
+ * <pre>
+ *   java -cp ... jlite.gen.ScalingCheck [--max-slope=1.5] [--allow=phase,...]
+ *                                       [--classes=N] [--statements=N]
+ * </pre>
+ *
+ * {@code --allow} lists phases that are known to be superlinear; they are
+ * still measured and reported but do not fail the check.
+ */
+public class ScalingCheck {
+    static final int[] FACTORS = {1, 2, 4, 8, 16};
+    // the slope is fitted over this many of the largest factors
+    static final int FITTED = 3;
+    // each measurement repeats a phase until this much time has passed
+    static final long MIN_SAMPLE_NANOS = 20_000_000;
+    static final int SAMPLES = 5;
+
+    interface Phase {
+        Object run(Source source, Ast.Program program) throws Exception;
+    }
+
+    static final Map<String, Phase> PHASES = new LinkedHashMap<>();
+
+    static {
+        PHASES.put("scan", (source, program) -> {
+            final var scanner = new Scanner(source.reader(), new Symbols());
+            int n = 0;
+            for (Symbol s = scanner.next_token(); s.sym != sym.EOF; s = scanner.next_token())
+                n++;
+            return n;
+        });
+        PHASES.put("parse", (source, program) -> parser.parse(source));
+        PHASES.put("typeIndex", (source, program) -> TypeIndexer.index(program));
+        PHASES.put("staticCheck", (source, program) -> StaticChecker.check(program));
+        PHASES.put("typeCheck", (source, program) -> Checker.check(program));
+        PHASES.put("irGen", (source, program) -> IRGen.generateProgram(program));
+    }
+
+    public static void main(String[] argv) throws Exception {
+        double maxSlope = 1.5;
+        final Set<String> allowed = new HashSet<>();
+        final var base = new ProgramGenerator.Config();
+        base.classes = 16;
+        base.statements = 12;
+        for (String arg : argv) {
+            final var kv = arg.replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "max-slope": maxSlope = Double.parseDouble(kv[1]); break;
+                case "allow": allowed.addAll(Arrays.asList(kv[1].split(","))); break;
+                case "classes": base.classes = Integer.parseInt(kv[1]); break;
+                case "statements": base.statements = Integer.parseInt(kv[1]); break;
+                default: throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+
+        final List<String> failures = new ArrayList<>();
+        for (String sweep : new String[]{"classes", "statements"}) {
+            System.out.println(String.format("growing %s (base %d classes, %d statements per method)",
+                    sweep, base.classes, base.statements));
+            System.out.print(String.format("  %-12s", "phase"));
+            for (int f : FACTORS)
+                System.out.print(String.format(" %10s", f + "x us"));
+            System.out.println(String.format(" %7s", "slope"));
+
+            final var sources = new Source[FACTORS.length];
+            final var programs = new Ast.Program[FACTORS.length];
+            for (int k = 0; k < FACTORS.length; k++) {
+                final var config = sweep.equals("classes") ? base.scale(FACTORS[k], 1) : base.scale(1, FACTORS[k]);
+                sources[k] = Source.of(sweep + FACTORS[k] + ".j", ProgramGenerator.generate(config));
+                programs[k] = parser.parse(sources[k]);
+            }
+            // one pass over every size first, so the small sizes are not
+            // measured before the JIT has settled
+            for (Phase phase : PHASES.values())
+                for (int k = 0; k < FACTORS.length; k++)
+                    sample(phase, sources[k], programs[k]);
+
+            final var times = new double[PHASES.size()][FACTORS.length];
+            int p = 0;
+            for (Phase phase : PHASES.values()) {
+                for (int k = 0; k < FACTORS.length; k++)
+                    times[p][k] = measure(phase, sources[k], programs[k]);
+                p++;
+            }
+
+            p = 0;
+            for (String name : PHASES.keySet()) {
+                final var t = times[p++];
+                final double slope = slope(t);
+                final boolean fail = slope > maxSlope && !allowed.contains(name);
+                System.out.print(String.format("  %-12s", name));
+                for (double v : t)
+                    System.out.print(String.format(" %10.1f", v / 1e3));
+                System.out.println(String.format(" %7.2f%s", slope,
+                        slope <= maxSlope ? "" : allowed.contains(name) ? "  (allowed)" : "  FAIL"));
+                if (fail)
+                    failures.add(String.format("%s grows with slope %.2f when growing %s", name, slope, sweep));
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            System.err.println(String.format("phases grew faster than linearly (max slope %.2f):", maxSlope));
+            failures.forEach(f -> System.err.println("  " + f));
+            System.exit(1);
+        }
+    }
+
+    static int sink;
+
+    // least-squares fit of log(time) against log(factor) over the largest factors
+    static double slope(double[] times) {
+        double sx = 0, sy = 0, sxx = 0, sxy = 0;
+        for (int k = FACTORS.length - FITTED; k < FACTORS.length; k++) {
+            final double x = Math.log(FACTORS[k]);
+            final double y = Math.log(times[k]);
+            sx += x;
+            sy += y;
+            sxx += x * x;
+            sxy += x * y;
+        }
+        final int n = FITTED;
+        return (n * sxy - sx * sy) / (n * sxx - sx * sx);
+    }
+
+    // best of several samples, in nanoseconds per run
+    static double measure(Phase phase, Source source, Ast.Program program) throws Exception {
+        double best = Double.MAX_VALUE;
+        for (int s = 0; s < SAMPLES; s++)
+            best = Math.min(best, sample(phase, source, program));
+        return best;
+    }
+
+    static double sample(Phase phase, Source source, Ast.Program program) throws Exception {
+        int runs = 0;
+        final long start = System.nanoTime();
+        long elapsed;
+        do {
+            sink += System.identityHashCode(phase.run(source, program));
+            runs++;
+        } while ((elapsed = System.nanoTime() - start) < MIN_SAMPLE_NANOS);
+        return (double) elapsed / runs;
+    }
+}
@@ -0,0 +1,209 @@
+package jlite.incremental;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import jlite.Env;
+import jlite.cache.Digests;
+import jlite.codegen.IRBinary;
+import jlite.json.JsonWriter;
+import jlite.json.TreeJson;
+import jlite.parser.Ast;
+
+/**
+ * A fingerprint per method that changes whenever its checked IR could.
+ *
+ * A method's IR depends on its own AST and on the signatures of every
+ * class its expressions can reach: its own class, the classes it names
+ * (return, param and local types, {@code new}), and transitively the
+ * classes those signatures name. Reachable signatures are hashed once per
+ * strongly connected group of classes, so fingerprinting stays linear even
+ * when every class can reach every other one.
+ */
+public class Fingerprints {
+    // bump when IRGen changes what it generates for the same input
+    static final int GENERATION = 3;
+
+    public static Map<Ast.Method, String> of(Ast.Program p, Env e) {
+        final var reachable = reachableSignatures(e);
+        final var classes = new ImmutableList.Builder<Ast.Cls>().add(p.main).addAll(p.classes).build();
+        final Map<Ast.Method, String> fingerprints = new IdentityHashMap<>();
+        for (Ast.Cls c : classes) {
+            for (Ast.Method m : c.methods) {
+                final var names = new TreeSet<String>();
+                names.add(c.name);
+                names.add(m.ret.name);
+                m.params.forEach(param -> names.add(param.type.name));
+                m.body.vars.forEach(v -> names.add(v.type.name));
+                m.body.stmts.forEach(s -> mentions(s, names));
+
+                final var md = Digests.sha256();
+                Digests.update(md, GENERATION + ":" + IRBinary.VERSION + ":" + c.name + ":" + json(m));
+                for (String name : names) {
+                    final var t = e.types.get(name);
+                    Digests.update(md, t == null || t.id < Env.BUILTINS ? name : reachable[t.id]);
+                }
+                fingerprints.put(m, Digests.hex(md.digest()));
+            }
+        }
+        return fingerprints;
+    }
+
+    static void mentions(Ast.Node n, TreeSet<String> names) {
+        if (n instanceof Ast.New) {
+            names.add(((Ast.New) n).name);
+        } else if (n instanceof Ast.While) {
+            mentions(((Ast.While) n).cond, names);
+            ((Ast.While) n).block.stmts.forEach(s -> mentions(s, names));
+        } else if (n instanceof Ast.If) {
+            final var b = (Ast.If) n;
+            mentions(b.cond, names);
+            b.cons.stmts.forEach(s -> mentions(s, names));
+            b.alt.stmts.forEach(s -> mentions(s, names));
+        } else if (n instanceof Ast.Assignment) {
+            mentions(((Ast.Assignment) n).lhs, names);
+            mentions(((Ast.Assignment) n).rhs, names);
+        } else if (n instanceof Ast.FieldAssignment) {
+            mentions(((Ast.FieldAssignment) n).lhs, names);
+            mentions(((Ast.FieldAssignment) n).rhs, names);
+        } else if (n instanceof Ast.Return) {
+            if (((Ast.Return) n).expr != null)
+                mentions(((Ast.Return) n).expr, names);
+        } else if (n instanceof Ast.Syscall) {
+            ((Ast.Syscall) n).args.forEach(a -> mentions(a, names));
+        } else if (n instanceof Ast.BinOp) {
+            mentions(((Ast.BinOp) n).l, names);
+            mentions(((Ast.BinOp) n).r, names);
+        } else if (n instanceof Ast.UnOp) {
+            mentions(((Ast.UnOp) n).e, names);
+        } else if (n instanceof Ast.Access) {
+            mentions(((Ast.Access) n).e, names);
+        } else if (n instanceof Ast.Call) {
+            mentions(((Ast.Call) n).callee, names);
+            ((Ast.Call) n).args.forEach(a -> mentions(a, names));
+        }
+    }
+
+    static String signature(Env.ClassType c) {
+        final var sb = new StringBuilder(c.name).append('{');
+        for (int i = 0; i < c.fieldIds.size(); i++)
+            sb.append(c.fieldIds.get(i)).append(':').append(name(c.fieldTypes.get(i))).append(';');
+        for (Env.MethodType m : c.methodSlots) {
+            sb.append(m.name).append('(');
+            m.params.forEach(t -> sb.append(name(t)).append(','));
+            sb.append(')').append(name(m.ret)).append(';');
+        }
+        return sb.append('}').toString();
+    }
+
+    // types that did not resolve are null in the Env
+    static String name(Env.Type t) {
+        return t == null ? "?" : t.name;
+    }
+
+    static int[] successors(Env.ClassType c) {
+        final var out = new ArrayList<Env.ClassType>(c.fieldTypes);
+        for (Env.MethodType m : c.methodSlots) {
+            out.add(m.ret);
+            out.addAll(m.params);
+        }
+        return out.stream()
+                .filter(t -> t != null && t.id >= Env.BUILTINS)
+                .mapToInt(t -> t.id)
+                .distinct()
+                .toArray();
+    }
+
+    // per class id, a hash of the signatures of every class reachable from it;
+    // iterative Tarjan, which completes each group after all groups it reaches
+    static String[] reachableSignatures(Env e) {
+        final int n = e.classes.size();
+        final var succ = new int[n][];
+        for (int v = 0; v < n; v++)
+            succ[v] = v < Env.BUILTINS ? new int[0] : successors(e.classes.get(v));
+
+        final var hashes = new String[n];
+        final var index = new int[n];
+        final var low = new int[n];
+        final var next = new int[n];
+        final var onStack = new boolean[n];
+        Arrays.fill(index, -1);
+        final var stack = new ArrayDeque<Integer>();
+        final var call = new ArrayDeque<Integer>();
+        int counter = 0;
+
+        for (int root = Env.BUILTINS; root < n; root++) {
+            if (index[root] >= 0)
+                continue;
+            call.push(root);
+            while (!call.isEmpty()) {
+                final int v = call.peek();
+                if (index[v] < 0) {
+                    index[v] = low[v] = counter++;
+                    stack.push(v);
+                    onStack[v] = true;
+                }
+                boolean descended = false;
+                while (next[v] < succ[v].length) {
+                    final int w = succ[v][next[v]++];
+                    if (index[w] < 0) {
+                        call.push(w);
+                        descended = true;
+                        break;
+                    }
+                    if (onStack[w])
+                        low[v] = Math.min(low[v], index[w]);
+                }
+                if (descended)
+                    continue;
+                call.pop();
+                if (!call.isEmpty())
+                    low[call.peek()] = Math.min(low[call.peek()], low[v]);
+                if (low[v] != index[v])
+                    continue;
+
+                final List<Integer> group = new ArrayList<>();
+                int w;
+                do {
+                    w = stack.pop();
+                    onStack[w] = false;
+                    group.add(w);
+                } while (w != v);
+                final var parts = new TreeSet<String>();
+                for (int u : group) {
+                    parts.add(signature(e.classes.get(u)));
+                    for (int s : succ[u])
+                        if (hashes[s] != null)
+                            parts.add(hashes[s]);
+                }
+                final var md = Digests.sha256();
+                parts.forEach(part -> Digests.update(md, part));
+                final var hash = Digests.hex(md.digest());
+                group.forEach(u -> hashes[u] = hash);
+            }
+        }
+        return hashes;
+    }
+
+    static String json(Ast.Method m) {
+        try {
+            final var out = new StringWriter();
+            final var w = new JsonWriter(out, false);
+            new TreeJson(w).write(m);
+            w.flush();
+            return out.toString();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
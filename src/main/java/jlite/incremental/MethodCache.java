@@ -0,0 +1,86 @@
+package jlite.incremental;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.ImmutableList;
+import jlite.TypeIndexer;
+import jlite.codegen.IR;
+import jlite.codegen.IRBinary;
+import jlite.codegen.IRGen;
+import jlite.fp.Result;
+import jlite.parser.Ast;
+
+/**
+ * On-disk store of generated methods, one {@link IRBinary} file per
+ * method named after its {@link Fingerprints fingerprint}. Only methods of
+ * programs that checked cleanly are stored, so a reused method needs
+ * neither checking nor generating again.
+ *
+ * <pre>
+ *   java -cp ... jlite.App --incremental=.jlite-cache file.j
+ * </pre>
+ */
+public class MethodCache {
+    private final Path dir;
+
+    public MethodCache(Path dir) throws IOException {
+        this.dir = Files.createDirectories(dir);
+    }
+
+    public IR.Method get(String fingerprint) {
+        try {
+            return IRBinary.read(dir.resolve(fingerprint + ".jir")).method(0);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // a damaged entry is just a miss; it is rewritten below
+            return null;
+        }
+    }
+
+    // written to a temp file first, so readers never see half an entry
+    public void put(String fingerprint, IR.Method m) throws IOException {
+        final var tmp = Files.createTempFile(dir, fingerprint, ".tmp");
+        try {
+            Files.write(tmp, IRBinary.write(new IR.Program(List.of(), List.of(m))));
+            Files.move(tmp, dir.resolve(fingerprint + ".jir"), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // compiles `p` reusing every cached method whose fingerprint still matches
+    public Result<IR.Program> generate(Ast.Program p, PrintStream report) throws IOException {
+        final var env = TypeIndexer.index(p);
+        final var fingerprints = Fingerprints.of(p, env);
+        final Set<Ast.Method> reused = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+        final var ir = IRGen.generateProgram(p, env, (c, m) -> {
+            final var hit = get(fingerprints.get(m));
+            if (hit != null)
+                reused.add(m);
+            return hit;
+        });
+        if (ir.isErr())
+            return ir;
+
+        final var methods = new ImmutableList.Builder<Ast.Cls>().add(p.main).addAll(p.classes).build()
+                .stream()
+                .flatMap(c -> c.methods.stream())
+                .collect(ImmutableList.toImmutableList());
+        for (int i = 0; i < methods.size(); i++)
+            if (!reused.contains(methods.get(i)))
+                put(fingerprints.get(methods.get(i)), ir.v.methods.get(i));
+        report.println(String.format("incremental: reused %d of %d methods", reused.size(), methods.size()));
+        return ir;
+    }
+}
@@ -0,0 +1,745 @@
+package jlite.interp;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.common.collect.ImmutableList;
+import jlite.Env;
+import jlite.StaticChecker;
+import jlite.parser.Ast;
+import jlite.parser.parser;
+import jlite.type_check.Checker;
+import jlite.type_check.TypeTable;
+
+/**
+ * Runs a checked {@link Ast.Program} without generating IR, by compiling
+ * every method body into a tree of closures. The {@link TypeTable} decides
+ * up front whether each expression is an Int, Bool or reference closure,
+ * so evaluation never looks at types, boxes or dispatches on node classes.
+ *
+ * Call sites are bound to their target method when they are compiled, and
+ * a target compiles its own body on its first call, so a short script only
+ * pays for the methods it runs. Access sites hold their field's slot in
+ * the object's int or reference array. Output and runtime errors are the
+ * same as the {@link Interpreter}'s.
+ *
+ * <pre>
+ *   java -cp ... jlite.interp.AstExecutor [--time] file.j
+ * </pre>
+ */
+public class AstExecutor {
+    interface IntNode {
+        int eval(Frame f);
+    }
+
+    interface BoolNode {
+        boolean eval(Frame f);
+    }
+
+    interface RefNode {
+        Object eval(Frame f);
+    }
+
+    // true once the method has returned
+    interface StmtNode {
+        boolean exec(Frame f);
+    }
+
+    // evaluates an argument straight into the callee's frame
+    interface ArgNode {
+        void pass(Frame from, Frame to);
+    }
+
+    static final int VOID = 0, INT = 1, BOOL = 2, REF = 3;
+
+    static final class Frame {
+        final int[] i;
+        final Object[] r;
+        int reti;
+        Object retr;
+
+        Frame(int ints, int refs) {
+            this.i = new int[ints];
+            this.r = new Object[refs];
+        }
+    }
+
+    // by field slot, where the field lives in an object's int or ref array
+    static final class ClassLayout {
+        final int[] slots;
+        final int[] kinds;
+        int ints;
+        int refs;
+
+        ClassLayout(Env.ClassType c) {
+            this.slots = new int[c.fieldTypes.size()];
+            this.kinds = new int[c.fieldTypes.size()];
+            for (int s = 0; s < slots.length; s++) {
+                kinds[s] = kind(c.fieldTypes.get(s));
+                slots[s] = kinds[s] == REF ? refs++ : ints++;
+            }
+        }
+    }
+
+    final class Target {
+        final String name;
+        final Ast.Method method;
+        final Env.ClassType cls;
+        final Map<String, Integer> slots = new HashMap<>();
+        final Map<String, Integer> kinds = new HashMap<>();
+        final int[] paramSlots;
+        final int[] paramKinds;
+        final int ret;
+        int ints;
+        int refs;
+        StmtNode body;
+
+        Target(Env.MethodType type, Ast.Method method) {
+            this.name = type.name;
+            this.method = method;
+            this.cls = type.owner;
+            this.ret = kind(type.ret);
+            declare("this", cls);
+            paramSlots = new int[method.params.size()];
+            paramKinds = new int[method.params.size()];
+            for (int k = 0; k < paramSlots.length; k++) {
+                final var p = method.params.get(k);
+                paramSlots[k] = declare(p.id.id, env.types.get(p.type.name));
+                paramKinds[k] = kinds.get(p.id.id);
+            }
+            for (Ast.Var v : method.body.vars)
+                declare(v.id.id, env.types.get(v.type.name));
+        }
+
+        int declare(String id, Env.ClassType type) {
+            final int k = kind(type);
+            final int slot = k == REF ? refs++ : ints++;
+            slots.put(id, slot);
+            kinds.put(id, k);
+            return slot;
+        }
+
+        StmtNode body() {
+            if (body == null)
+                body = new Compiler(this).block(method.body.stmts);
+            return body;
+        }
+    }
+
+    final class CallSite {
+        final Target target;
+        final RefNode receiver;
+        final ArgNode[] args;
+
+        CallSite(Target target, RefNode receiver, ArgNode[] args) {
+            this.target = target;
+            this.receiver = receiver;
+            this.args = args;
+        }
+
+        Frame invoke(Frame f) {
+            final var t = target;
+            final var body = t.body != null ? t.body : t.body();
+            final var callee = new Frame(t.ints, t.refs);
+            callee.r[0] = receiver.eval(f);
+            for (ArgNode a : args)
+                a.pass(f, callee);
+            body.exec(callee);
+            return callee;
+        }
+    }
+
+    final TypeTable types;
+    final Env env;
+    final ClassLayout[] layouts;
+    final Target[] targets;
+    final Target main;
+
+    final BufferedReader in;
+    final PrintStream out;
+
+    public AstExecutor(Ast.Program p, TypeTable types, BufferedReader in, PrintStream out) {
+        this.types = types;
+        this.env = types.env;
+        this.in = in;
+        this.out = out;
+
+        this.layouts = new ClassLayout[env.classes.size()];
+        for (int id = Env.BUILTINS; id < layouts.length; id++)
+            layouts[id] = new ClassLayout(env.classes.get(id));
+
+        this.targets = new Target[env.methods.size()];
+        for (Ast.Cls c : new ImmutableList.Builder<Ast.Cls>().add(p.main).addAll(p.classes).build()) {
+            final var cls = env.types.get(c.name);
+            for (Ast.Method m : c.methods) {
+                final var type = cls.methods.get(m.id.id);
+                targets[type.id] = new Target(type, m);
+            }
+        }
+        this.main = targets[env.types.get(p.main.name).methods.get("main").id];
+    }
+
+    static int kind(Env.Type t) {
+        if (!t.isClass() || t.id == Env.VOID)
+            return VOID;
+        if (t.id == Env.INT)
+            return INT;
+        if (t.id == Env.BOOL)
+            return BOOL;
+        return REF;
+    }
+
+    public void run() {
+        final var layout = layouts[main.cls.id];
+        final var frame = new Frame(main.ints, main.refs);
+        frame.r[0] = new Interpreter.Obj(layout.ints, layout.refs);
+        try {
+            main.body().exec(frame);
+        } catch (StackOverflowError e) {
+            throw new Interpreter.RuntimeError("stack overflow");
+        } finally {
+            out.flush();
+        }
+    }
+
+    static Interpreter.Obj obj(Object o) {
+        if (o == null)
+            throw new Interpreter.RuntimeError("null dereference");
+        return (Interpreter.Obj) o;
+    }
+
+    String readln() {
+        out.flush();
+        try {
+            final var line = in.readLine();
+            if (line == null)
+                throw new Interpreter.RuntimeError("readln: end of input");
+            return line;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    int readInt() {
+        try {
+            return Integer.parseInt(readln().trim());
+        } catch (NumberFormatException e) {
+            throw new Interpreter.RuntimeError("readln: not an Int");
+        }
+    }
+
+    // compiles one method's body; names resolve to frame slots here, once
+    final class Compiler {
+        final Target t;
+
+        Compiler(Target t) {
+            this.t = t;
+        }
+
+        int kindOf(Ast.Node n) {
+            return kind(types.get(n));
+        }
+
+        StmtNode block(List<Ast.Stmt> stmts) {
+            final var nodes = stmts.stream().map(this::stmt).toArray(StmtNode[]::new);
+            if (nodes.length == 0)
+                return f -> false;
+            if (nodes.length == 1)
+                return nodes[0];
+            return f -> {
+                for (StmtNode n : nodes)
+                    if (n.exec(f))
+                        return true;
+                return false;
+            };
+        }
+
+        StmtNode stmt(Ast.Stmt s) {
+            if (s instanceof Ast.While) {
+                final var w = (Ast.While) s;
+                final var cond = boolExpr(w.cond);
+                final var body = block(w.block.stmts);
+                return f -> {
+                    while (cond.eval(f))
+                        if (body.exec(f))
+                            return true;
+                    return false;
+                };
+            }
+            if (s instanceof Ast.If) {
+                final var b = (Ast.If) s;
+                final var cond = boolExpr(b.cond);
+                final var cons = block(b.cons.stmts);
+                final var alt = block(b.alt.stmts);
+                return f -> cond.eval(f) ? cons.exec(f) : alt.exec(f);
+            }
+            if (s instanceof Ast.Assignment)
+                return assignment((Ast.Assignment) s);
+            if (s instanceof Ast.FieldAssignment)
+                return fieldAssignment((Ast.FieldAssignment) s);
+            if (s instanceof Ast.Return)
+                return ret((Ast.Return) s);
+            if (s instanceof Ast.Syscall)
+                return syscall((Ast.Syscall) s);
+            if (s instanceof Ast.Expr)
+                return effect((Ast.Expr) s);
+            throw new IllegalArgumentException("unknown statement " + s.getClass().getSimpleName());
+        }
+
+        // evaluates an expression only for its side effects
+        StmtNode effect(Ast.Expr e) {
+            switch (kindOf(e)) {
+                case VOID: {
+                    final var site = call((Ast.Call) e);
+                    return f -> {
+                        site.invoke(f);
+                        return false;
+                    };
+                }
+                case INT: {
+                    final var x = intExpr(e);
+                    return f -> {
+                        x.eval(f);
+                        return false;
+                    };
+                }
+                case BOOL: {
+                    final var x = boolExpr(e);
+                    return f -> {
+                        x.eval(f);
+                        return false;
+                    };
+                }
+                default: {
+                    final var x = refExpr(e);
+                    return f -> {
+                        x.eval(f);
+                        return false;
+                    };
+                }
+            }
+        }
+
+        StmtNode assignment(Ast.Assignment a) {
+            final var id = ((Ast.Id) a.lhs).id;
+            final var local = t.slots.get(id);
+            if (local == null)
+                return store(f -> f.r[0], t.cls, id, a.rhs);
+            final int s = local;
+            switch (t.kinds.get(id)) {
+                case INT: {
+                    final var x = intExpr(a.rhs);
+                    return f -> {
+                        f.i[s] = x.eval(f);
+                        return false;
+                    };
+                }
+                case BOOL: {
+                    final var x = boolExpr(a.rhs);
+                    return f -> {
+                        f.i[s] = x.eval(f) ? 1 : 0;
+                        return false;
+                    };
+                }
+                default: {
+                    final var x = refExpr(a.rhs);
+                    return f -> {
+                        f.r[s] = x.eval(f);
+                        return false;
+                    };
+                }
+            }
+        }
+
+        StmtNode fieldAssignment(Ast.FieldAssignment a) {
+            return store(refExpr(a.lhs), (Env.ClassType) types.get(a.lhs), a.id.id, a.rhs);
+        }
+
+        // the object is evaluated before the value and only checked after
+        StmtNode store(RefNode o, Env.ClassType cls, String field, Ast.Expr rhs) {
+            final var layout = layouts[cls.id];
+            final int slot = cls.fieldSlot(field);
+            final int s = layout.slots[slot];
+            switch (layout.kinds[slot]) {
+                case INT: {
+                    final var x = intExpr(rhs);
+                    return f -> {
+                        final var r = o.eval(f);
+                        final int v = x.eval(f);
+                        obj(r).ints[s] = v;
+                        return false;
+                    };
+                }
+                case BOOL: {
+                    final var x = boolExpr(rhs);
+                    return f -> {
+                        final var r = o.eval(f);
+                        final int v = x.eval(f) ? 1 : 0;
+                        obj(r).ints[s] = v;
+                        return false;
+                    };
+                }
+                default: {
+                    final var x = refExpr(rhs);
+                    return f -> {
+                        final var r = o.eval(f);
+                        final var v = x.eval(f);
+                        obj(r).refs[s] = v;
+                        return false;
+                    };
+                }
+            }
+        }
+
+        StmtNode ret(Ast.Return r) {
+            if (r.expr == null)
+                return f -> true;
+            switch (t.ret) {
+                case INT: {
+                    final var x = intExpr(r.expr);
+                    return f -> {
+                        f.reti = x.eval(f);
+                        return true;
+                    };
+                }
+                case BOOL: {
+                    final var x = boolExpr(r.expr);
+                    return f -> {
+                        f.reti = x.eval(f) ? 1 : 0;
+                        return true;
+                    };
+                }
+                case REF: {
+                    final var x = refExpr(r.expr);
+                    return f -> {
+                        f.retr = x.eval(f);
+                        return true;
+                    };
+                }
+                default: {
+                    // a Void method still evaluates what it returns
+                    final var x = effect(r.expr);
+                    return f -> {
+                        x.exec(f);
+                        return true;
+                    };
+                }
+            }
+        }
+
+        StmtNode syscall(Ast.Syscall s) {
+            if (s.args.size() != 1)
+                throw new IllegalArgumentException(s.name + " takes one argument in " + t.name);
+            final var arg = s.args.get(0);
+            if (s.name.equals("println")) {
+                switch (kindOf(arg)) {
+                    case INT: {
+                        final var x = intExpr(arg);
+                        return f -> {
+                            out.println(x.eval(f));
+                            return false;
+                        };
+                    }
+                    case BOOL: {
+                        final var x = boolExpr(arg);
+                        return f -> {
+                            out.println(x.eval(f));
+                            return false;
+                        };
+                    }
+                    default: {
+                        final var x = refExpr(arg);
+                        return f -> {
+                            out.println(x.eval(f));
+                            return false;
+                        };
+                    }
+                }
+            }
+            if (!s.name.equals("readln") || !(arg instanceof Ast.Id))
+                throw new IllegalArgumentException("unknown syscall " + s.name + " in " + t.name);
+            return read(((Ast.Id) arg).id, kindOf(arg));
+        }
+
+        StmtNode read(String id, int kind) {
+            final var local = t.slots.get(id);
+            final IntNode readInt = kind == BOOL
+                    ? f -> Boolean.parseBoolean(readln().trim()) ? 1 : 0
+                    : f -> readInt();
+            if (local != null) {
+                final int s = local;
+                if (kind == REF)
+                    return f -> {
+                        f.r[s] = readln();
+                        return false;
+                    };
+                return f -> {
+                    f.i[s] = readInt.eval(f);
+                    return false;
+                };
+            }
+            final var layout = layouts[t.cls.id];
+            final int s = layout.slots[t.cls.fieldSlot(id)];
+            if (kind == REF)
+                return f -> {
+                    final var v = readln();
+                    obj(f.r[0]).refs[s] = v;
+                    return false;
+                };
+            return f -> {
+                final int v = readInt.eval(f);
+                obj(f.r[0]).ints[s] = v;
+                return false;
+            };
+        }
+
+        CallSite call(Ast.Call c) {
+            final var m = (Env.MethodType) types.get(c.callee);
+            final var target = targets[m.id];
+            final RefNode receiver = c.callee instanceof Ast.Access
+                    ? refExpr(((Ast.Access) c.callee).e)
+                    : f -> f.r[0];
+            final var args = new ArgNode[c.args.size()];
+            for (int k = 0; k < args.length; k++) {
+                final int s = target.paramSlots[k];
+                final var arg = c.args.get(k);
+                switch (target.paramKinds[k]) {
+                    case INT: {
+                        final var x = intExpr(arg);
+                        args[k] = (from, to) -> to.i[s] = x.eval(from);
+                        break;
+                    }
+                    case BOOL: {
+                        final var x = boolExpr(arg);
+                        args[k] = (from, to) -> to.i[s] = x.eval(from) ? 1 : 0;
+                        break;
+                    }
+                    default: {
+                        final var x = refExpr(arg);
+                        args[k] = (from, to) -> to.r[s] = x.eval(from);
+                    }
+                }
+            }
+            return new CallSite(target, receiver, args);
+        }
+
+        // a field of `e`'s class: its layout and slot
+        ClassLayout layout(Ast.Access a) {
+            return layouts[types.get(a.e).id];
+        }
+
+        int fieldSlot(Ast.Access a) {
+            return ((Env.ClassType) types.get(a.e)).fieldSlot(a.id.id);
+        }
+
+        IntNode intExpr(Ast.Expr e) {
+            if (e instanceof Ast.Lit) {
+                final int v = (Integer) ((Ast.Lit) e).v;
+                return f -> v;
+            }
+            if (e instanceof Ast.Id) {
+                final var id = ((Ast.Id) e).id;
+                final var local = t.slots.get(id);
+                if (local != null) {
+                    final int s = local;
+                    return f -> f.i[s];
+                }
+                final int s = layouts[t.cls.id].slots[t.cls.fieldSlot(id)];
+                return f -> obj(f.r[0]).ints[s];
+            }
+            if (e instanceof Ast.Access) {
+                final var a = (Ast.Access) e;
+                final var o = refExpr(a.e);
+                final int s = layout(a).slots[fieldSlot(a)];
+                return f -> obj(o.eval(f)).ints[s];
+            }
+            if (e instanceof Ast.Call) {
+                final var site = call((Ast.Call) e);
+                return f -> site.invoke(f).reti;
+            }
+            if (e instanceof Ast.UnOp) {
+                final var x = intExpr(((Ast.UnOp) e).e);
+                return f -> -x.eval(f);
+            }
+            if (e instanceof Ast.BinOp) {
+                final var b = (Ast.BinOp) e;
+                final var l = intExpr(b.l);
+                final var r = intExpr(b.r);
+                switch (b.op) {
+                    case "+":
+                        return f -> l.eval(f) + r.eval(f);
+                    case "-":
+                        return f -> l.eval(f) - r.eval(f);
+                    case "*":
+                        return f -> l.eval(f) * r.eval(f);
+                    case "/": {
+                        final var where = "division by zero in " + t.name;
+                        return f -> {
+                            final int x = l.eval(f);
+                            final int y = r.eval(f);
+                            if (y == 0)
+                                throw new Interpreter.RuntimeError(where);
+                            return x / y;
+                        };
+                    }
+                }
+            }
+            throw new IllegalArgumentException("not an Int expression in " + t.name);
+        }
+
+        BoolNode boolExpr(Ast.Expr e) {
+            if (e instanceof Ast.Lit) {
+                final boolean v = (Boolean) ((Ast.Lit) e).v;
+                return f -> v;
+            }
+            if (e instanceof Ast.Id || e instanceof Ast.Access || e instanceof Ast.Call) {
+                final var x = intExpr(e);
+                return f -> x.eval(f) != 0;
+            }
+            if (e instanceof Ast.UnOp) {
+                final var x = boolExpr(((Ast.UnOp) e).e);
+                return f -> !x.eval(f);
+            }
+            if (e instanceof Ast.BinOp) {
+                final var b = (Ast.BinOp) e;
+                switch (b.op) {
+                    // both sides are always evaluated, as in the IR
+                    case "&&": {
+                        final var l = boolExpr(b.l);
+                        final var r = boolExpr(b.r);
+                        return f -> l.eval(f) & r.eval(f);
+                    }
+                    case "||": {
+                        final var l = boolExpr(b.l);
+                        final var r = boolExpr(b.r);
+                        return f -> l.eval(f) | r.eval(f);
+                    }
+                    case "==":
+                    case "!=":
+                        return equality(b, b.op.equals("=="));
+                }
+                final var l = intExpr(b.l);
+                final var r = intExpr(b.r);
+                switch (b.op) {
+                    case "<":
+                        return f -> l.eval(f) < r.eval(f);
+                    case "<=":
+                        return f -> l.eval(f) <= r.eval(f);
+                    case ">":
+                        return f -> l.eval(f) > r.eval(f);
+                    case ">=":
+                        return f -> l.eval(f) >= r.eval(f);
+                }
+            }
+            throw new IllegalArgumentException("not a Bool expression in " + t.name);
+        }
+
+        BoolNode equality(Ast.BinOp b, boolean eq) {
+            switch (kindOf(b.l)) {
+                case INT: {
+                    final var l = intExpr(b.l);
+                    final var r = intExpr(b.r);
+                    return eq ? f -> l.eval(f) == r.eval(f) : f -> l.eval(f) != r.eval(f);
+                }
+                case BOOL: {
+                    final var l = boolExpr(b.l);
+                    final var r = boolExpr(b.r);
+                    return eq ? f -> l.eval(f) == r.eval(f) : f -> l.eval(f) != r.eval(f);
+                }
+                default: {
+                    final var l = refExpr(b.l);
+                    final var r = refExpr(b.r);
+                    return eq
+                            ? f -> Objects.equals(l.eval(f), r.eval(f))
+                            : f -> !Objects.equals(l.eval(f), r.eval(f));
+                }
+            }
+        }
+
+        RefNode refExpr(Ast.Expr e) {
+            if (e instanceof Ast.Lit) {
+                final var v = ((Ast.Lit) e).v;
+                return f -> v;
+            }
+            if (e instanceof Ast.Id) {
+                final var id = ((Ast.Id) e).id;
+                final var local = t.slots.get(id);
+                if (local != null) {
+                    final int s = local;
+                    return f -> f.r[s];
+                }
+                final int s = layouts[t.cls.id].slots[t.cls.fieldSlot(id)];
+                return f -> obj(f.r[0]).refs[s];
+            }
+            if (e instanceof Ast.New) {
+                final var layout = layouts[types.get(e).id];
+                final int ints = layout.ints;
+                final int refs = layout.refs;
+                return f -> new Interpreter.Obj(ints, refs);
+            }
+            if (e instanceof Ast.Access) {
+                final var a = (Ast.Access) e;
+                final var o = refExpr(a.e);
+                final int s = layout(a).slots[fieldSlot(a)];
+                return f -> obj(o.eval(f)).refs[s];
+            }
+            if (e instanceof Ast.Call) {
+                final var site = call((Ast.Call) e);
+                return f -> site.invoke(f).retr;
+            }
+            if (e instanceof Ast.BinOp && ((Ast.BinOp) e).op.equals("+")) {
+                final var l = refExpr(((Ast.BinOp) e).l);
+                final var r = refExpr(((Ast.BinOp) e).r);
+                return f -> (String) l.eval(f) + (String) r.eval(f);
+            }
+            throw new IllegalArgumentException("not a reference expression in " + t.name);
+        }
+    }
+
+    public static void main(String[] argv) throws Exception {
+        boolean time = false;
+        String file = null;
+        for (String arg : argv) {
+            if (arg.equals("--time"))
+                time = true;
+            else
+                file = arg;
+        }
+        if (file == null) {
+            System.err.println("usage: AstExecutor [--time] file.j");
+            System.exit(2);
+        }
+
+        final var program = parser.parse(file);
+        final var checked = StaticChecker.check(program);
+        if (checked.isErr()) {
+            System.err.println("error: " + checked.err);
+            System.exit(1);
+        }
+        final var types = Checker.check(program);
+        if (types.isErr()) {
+            System.err.println("error: " + types.err);
+            System.exit(1);
+        }
+        final var out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        final long start = System.nanoTime();
+        try {
+            new AstExecutor(program, types.v, new BufferedReader(new InputStreamReader(System.in)), out).run();
+        } catch (Interpreter.RuntimeError e) {
+            System.err.println("runtime error: " + e.getMessage());
+            System.exit(1);
+        }
+        if (time)
+            System.err.println(String.format("run: %.1f ms", (System.nanoTime() - start) / 1e6));
+    }
+}
@@ -0,0 +1,705 @@
+package jlite.interp;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import jlite.StaticChecker;
+import jlite.analysis.Optimizer;
+import jlite.codegen.IR;
+import jlite.codegen.IRBinary;
+import jlite.codegen.IRGen;
+import jlite.parser.parser;
+
+/**
+ * Runs an {@link IR.Program} directly. Every method is translated once into
+ * a flat int array: labels become instruction offsets, and each param, var
+ * and temp becomes a slot in one of two frame arrays, an int[] for Int and
+ * Bool values and an Object[] for strings and objects, so arithmetic and
+ * branches never box. Fields are laid out the same way per class.
+ *
+ * The program starts at the main class's {@code main}, e.g. {@code Main::main},
+ * with its params zeroed.
+ *
+ * <pre>
+ *   java -cp ... jlite.interp.Interpreter [--time] file.j|file.jir
+ * </pre>
+ */
+public class Interpreter {
+    static final int LIT_I = 0, LIT_R = 1, MOV_I = 2, MOV_R = 3, NEW = 4;
+    static final int GET_I = 5, GET_R = 6, PUT_I = 7, PUT_R = 8;
+    static final int ADD = 9, SUB = 10, MUL = 11, DIV = 12;
+    static final int LT = 13, LE = 14, GT = 15, GE = 16, EQ_I = 17, NE_I = 18;
+    static final int AND = 19, OR = 20, CONCAT = 21, EQ_R = 22, NE_R = 23;
+    static final int NEG = 24, NOT = 25, CALL = 26;
+    static final int PRINT_I = 27, PRINT_B = 28, PRINT_R = 29, READ_I = 30, READ_B = 31, READ_R = 32;
+    static final int JMP = 33, JNZ = 34, RET_I = 35, RET_R = 36, RET = 37;
+    static final int JZ = 38, JLT = 39, JLE = 40, JGT = 41, JGE = 42, JEQ = 43, JNE = 44;
+
+    // what a value of a type is stored as
+    static final int VOID = 0, INT = 1, REF = 2;
+
+    public static class RuntimeError extends RuntimeException {
+        public RuntimeError(String message) {
+            super(message);
+        }
+    }
+
+    static final class Obj {
+        final int[] ints;
+        final Object[] refs;
+
+        Obj(Layout l) {
+            this(l.ints, l.refs);
+        }
+
+        Obj(int ints, int refs) {
+            this.ints = new int[ints];
+            this.refs = new Object[refs];
+        }
+    }
+
+    // a class's fields, each mapped to a slot in its kind's array
+    static final class Layout {
+        final Map<String, Integer> slots = new HashMap<>();
+        final Map<String, String> types = new HashMap<>();
+        int ints;
+        int refs;
+    }
+
+    static final class Code {
+        final String name;
+        int[] code;
+        Object[] consts;
+        int ints;
+        int refs;
+        int[] params;
+        int[] paramKinds;
+        int ret;
+
+        Code(String name) {
+            this.name = name;
+        }
+    }
+
+    final Layout[] layouts;
+    final Map<String, Integer> classIds = new HashMap<>();
+    final Code[] methods;
+    final Map<String, Integer> methodIds = new HashMap<>();
+    final int main;
+
+    final BufferedReader in;
+    final PrintStream out;
+
+    // where a callee leaves its result
+    int reti;
+    Object retr;
+
+    public Interpreter(IR.Program p, BufferedReader in, PrintStream out) {
+        this.in = in;
+        this.out = out;
+
+        this.layouts = new Layout[p.decls.size()];
+        for (int i = 0; i < layouts.length; i++) {
+            final var d = p.decls.get(i);
+            final var l = layouts[i] = new Layout();
+            classIds.put(d.name, i);
+            for (IR.Field f : d.fields) {
+                l.types.put(f.id, f.type);
+                l.slots.put(f.id, kind(f.type) == INT ? l.ints++ : l.refs++);
+            }
+        }
+
+        this.methods = new Code[p.methods.size()];
+        for (int i = 0; i < methods.length; i++) {
+            final var m = p.methods.get(i);
+            methods[i] = new Code(m.name);
+            methodIds.put(m.name, i);
+        }
+        for (int i = 0; i < methods.length; i++)
+            new Translator(p.methods.get(i), methods[i]).translate();
+
+        final var entry = p.decls.isEmpty() ? null : methodIds.get(p.decls.get(0).name + "::main");
+        if (entry == null)
+            throw new IllegalArgumentException("no main method");
+        this.main = entry;
+    }
+
+    static int kind(String type) {
+        if (type.equals("Int") || type.equals("Bool"))
+            return INT;
+        if (type.equals("Void"))
+            return VOID;
+        return REF;
+    }
+
+    public void run() {
+        final var m = methods[main];
+        final var ints = new int[m.ints];
+        final var refs = new Object[m.refs];
+        refs[m.params[0]] = new Obj(layouts[0]);
+        try {
+            exec(m, ints, refs);
+        } catch (StackOverflowError e) {
+            throw new RuntimeError("stack overflow");
+        } finally {
+            out.flush();
+        }
+    }
+
+    static Obj obj(Object o) {
+        if (o == null)
+            throw new RuntimeError("null dereference");
+        return (Obj) o;
+    }
+
+    void exec(Code m, int[] I, Object[] R) {
+        final int[] c = m.code;
+        int pc = 0;
+        while (true) {
+            switch (c[pc]) {
+                case LIT_I:
+                    I[c[pc + 1]] = c[pc + 2];
+                    pc += 3;
+                    break;
+                case LIT_R:
+                    R[c[pc + 1]] = m.consts[c[pc + 2]];
+                    pc += 3;
+                    break;
+                case MOV_I:
+                    I[c[pc + 1]] = I[c[pc + 2]];
+                    pc += 3;
+                    break;
+                case MOV_R:
+                    R[c[pc + 1]] = R[c[pc + 2]];
+                    pc += 3;
+                    break;
+                case NEW:
+                    R[c[pc + 1]] = new Obj(layouts[c[pc + 2]]);
+                    pc += 3;
+                    break;
+                case GET_I:
+                    I[c[pc + 1]] = obj(R[c[pc + 2]]).ints[c[pc + 3]];
+                    pc += 4;
+                    break;
+                case GET_R:
+                    R[c[pc + 1]] = obj(R[c[pc + 2]]).refs[c[pc + 3]];
+                    pc += 4;
+                    break;
+                case PUT_I:
+                    obj(R[c[pc + 1]]).ints[c[pc + 2]] = I[c[pc + 3]];
+                    pc += 4;
+                    break;
+                case PUT_R:
+                    obj(R[c[pc + 1]]).refs[c[pc + 2]] = R[c[pc + 3]];
+                    pc += 4;
+                    break;
+                case ADD:
+                    I[c[pc + 1]] = I[c[pc + 2]] + I[c[pc + 3]];
+                    pc += 4;
+                    break;
+                case SUB:
+                    I[c[pc + 1]] = I[c[pc + 2]] - I[c[pc + 3]];
+                    pc += 4;
+                    break;
+                case MUL:
+                    I[c[pc + 1]] = I[c[pc + 2]] * I[c[pc + 3]];
+                    pc += 4;
+                    break;
+                case DIV:
+                    if (I[c[pc + 3]] == 0)
+                        throw new RuntimeError("division by zero in " + m.name);
+                    I[c[pc + 1]] = I[c[pc + 2]] / I[c[pc + 3]];
+                    pc += 4;
+                    break;
+                case LT:
+                    I[c[pc + 1]] = I[c[pc + 2]] < I[c[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case LE:
+                    I[c[pc + 1]] = I[c[pc + 2]] <= I[c[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case GT:
+                    I[c[pc + 1]] = I[c[pc + 2]] > I[c[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case GE:
+                    I[c[pc + 1]] = I[c[pc + 2]] >= I[c[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case EQ_I:
+                    I[c[pc + 1]] = I[c[pc + 2]] == I[c[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case NE_I:
+                    I[c[pc + 1]] = I[c[pc + 2]] != I[c[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case AND:
+                    I[c[pc + 1]] = I[c[pc + 2]] & I[c[pc + 3]];
+                    pc += 4;
+                    break;
+                case OR:
+                    I[c[pc + 1]] = I[c[pc + 2]] | I[c[pc + 3]];
+                    pc += 4;
+                    break;
+                case CONCAT:
+                    R[c[pc + 1]] = (String) R[c[pc + 2]] + (String) R[c[pc + 3]];
+                    pc += 4;
+                    break;
+                case EQ_R:
+                    I[c[pc + 1]] = Objects.equals(R[c[pc + 2]], R[c[pc + 3]]) ? 1 : 0;
+                    pc += 4;
+                    break;
+                case NE_R:
+                    I[c[pc + 1]] = Objects.equals(R[c[pc + 2]], R[c[pc + 3]]) ? 0 : 1;
+                    pc += 4;
+                    break;
+                case NEG:
+                    I[c[pc + 1]] = -I[c[pc + 2]];
+                    pc += 3;
+                    break;
+                case NOT:
+                    I[c[pc + 1]] = I[c[pc + 2]] ^ 1;
+                    pc += 3;
+                    break;
+                case CALL: {
+                    final var callee = methods[c[pc + 2]];
+                    final int argc = c[pc + 3];
+                    final var ints = new int[callee.ints];
+                    final var refs = new Object[callee.refs];
+                    for (int k = 0; k < argc; k++) {
+                        if (callee.paramKinds[k] == INT)
+                            ints[callee.params[k]] = I[c[pc + 4 + k]];
+                        else
+                            refs[callee.params[k]] = R[c[pc + 4 + k]];
+                    }
+                    exec(callee, ints, refs);
+                    final int dst = c[pc + 1];
+                    if (dst >= 0) {
+                        if (callee.ret == INT)
+                            I[dst] = reti;
+                        else
+                            R[dst] = retr;
+                    }
+                    pc += 4 + argc;
+                    break;
+                }
+                case PRINT_I:
+                    out.println(I[c[pc + 1]]);
+                    pc += 2;
+                    break;
+                case PRINT_B:
+                    out.println(I[c[pc + 1]] != 0);
+                    pc += 2;
+                    break;
+                case PRINT_R:
+                    out.println(R[c[pc + 1]]);
+                    pc += 2;
+                    break;
+                case READ_I:
+                    try {
+                        I[c[pc + 1]] = Integer.parseInt(readln().trim());
+                    } catch (NumberFormatException e) {
+                        throw new RuntimeError("readln: not an Int");
+                    }
+                    pc += 2;
+                    break;
+                case READ_B:
+                    I[c[pc + 1]] = Boolean.parseBoolean(readln().trim()) ? 1 : 0;
+                    pc += 2;
+                    break;
+                case READ_R:
+                    R[c[pc + 1]] = readln();
+                    pc += 2;
+                    break;
+                case JMP:
+                    pc = c[pc + 1];
+                    break;
+                case JNZ:
+                    pc = I[c[pc + 1]] != 0 ? c[pc + 2] : pc + 3;
+                    break;
+                case JZ:
+                    pc = I[c[pc + 1]] == 0 ? c[pc + 2] : pc + 3;
+                    break;
+                case JLT:
+                    pc = I[c[pc + 1]] < I[c[pc + 2]] ? c[pc + 3] : pc + 4;
+                    break;
+                case JLE:
+                    pc = I[c[pc + 1]] <= I[c[pc + 2]] ? c[pc + 3] : pc + 4;
+                    break;
+                case JGT:
+                    pc = I[c[pc + 1]] > I[c[pc + 2]] ? c[pc + 3] : pc + 4;
+                    break;
+                case JGE:
+                    pc = I[c[pc + 1]] >= I[c[pc + 2]] ? c[pc + 3] : pc + 4;
+                    break;
+                case JEQ:
+                    pc = I[c[pc + 1]] == I[c[pc + 2]] ? c[pc + 3] : pc + 4;
+                    break;
+                case JNE:
+                    pc = I[c[pc + 1]] != I[c[pc + 2]] ? c[pc + 3] : pc + 4;
+                    break;
+                case RET_I:
+                    reti = I[c[pc + 1]];
+                    return;
+                case RET_R:
+                    retr = R[c[pc + 1]];
+                    return;
+                case RET:
+                    // falling off the end of a method returns the zero value
+                    reti = 0;
+                    retr = null;
+                    return;
+                default:
+                    throw new IllegalStateException("bad opcode " + c[pc] + " in " + m.name);
+            }
+        }
+    }
+
+    String readln() {
+        out.flush();
+        try {
+            final var line = in.readLine();
+            if (line == null)
+                throw new RuntimeError("readln: end of input");
+            return line;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // translates one method; labels are patched once all offsets are known
+    class Translator {
+        final IR.Method m;
+        final Code out;
+        final Map<String, String> types = new HashMap<>();
+        final Map<String, Integer> slots = new HashMap<>();
+        final Map<String, Integer> labels = new HashMap<>();
+        final List<Object> consts = new ArrayList<>();
+        // offsets of jump targets that still hold a label's index in `names`
+        final List<Integer> fixups = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        int[] code = new int[64];
+        int size;
+
+        Translator(IR.Method m, Code out) {
+            this.m = m;
+            this.out = out;
+        }
+
+        void translate() {
+            out.params = new int[m.params.size()];
+            out.paramKinds = new int[m.params.size()];
+            for (int i = 0; i < m.params.size(); i++) {
+                final var p = m.params.get(i);
+                out.params[i] = declare(p.type, p.id);
+                out.paramKinds[i] = kind(p.type);
+            }
+            out.ret = kind(m.ret);
+            for (IR.Stmt s : m.body)
+                if (s instanceof IR.Var)
+                    declare(((IR.Var) s).type, ((IR.Var) s).name);
+
+            for (IR.Stmt s : m.body)
+                stmt(s);
+            emit(RET);
+
+            for (int at : fixups) {
+                final var label = names.get(code[at]);
+                final var target = labels.get(label);
+                if (target == null)
+                    throw new IllegalArgumentException("unknown label " + label + " in " + m.name);
+                code[at] = target;
+            }
+            out.code = Arrays.copyOf(code, size);
+            out.consts = consts.toArray();
+        }
+
+        int declare(String type, String name) {
+            if (slots.containsKey(name))
+                return slots.get(name);
+            final int k = kind(type);
+            final int slot = k == INT ? out.ints++ : k == REF ? out.refs++ : -1;
+            types.put(name, type);
+            slots.put(name, slot);
+            return slot;
+        }
+
+        int slot(String name) {
+            final var slot = slots.get(name);
+            if (slot == null)
+                throw new IllegalArgumentException("undeclared " + name + " in " + m.name);
+            return slot;
+        }
+
+        String type(String name) {
+            slot(name);
+            return types.get(name);
+        }
+
+        boolean isInt(String name) {
+            return kind(type(name)) == INT;
+        }
+
+        Layout layout(String name) {
+            final var id = classIds.get(type(name));
+            if (id == null)
+                throw new IllegalArgumentException(name + " is not an object in " + m.name);
+            return layouts[id];
+        }
+
+        int field(Layout l, String field) {
+            final var slot = l.slots.get(field);
+            if (slot == null)
+                throw new IllegalArgumentException("unknown field " + field + " in " + m.name);
+            return slot;
+        }
+
+        void emit(int... words) {
+            while (size + words.length > code.length)
+                code = Arrays.copyOf(code, code.length * 2);
+            for (int w : words)
+                code[size++] = w;
+        }
+
+        int target(String label) {
+            fixups.add(size);
+            names.add(label);
+            return names.size() - 1;
+        }
+
+        void stmt(IR.Stmt s) {
+            if (s instanceof IR.Var) {
+                // slots were declared up front
+            } else if (s instanceof IR.Label) {
+                labels.put(((IR.Label) s).name, size);
+            } else if (s instanceof IR.Goto) {
+                emit(JMP);
+                emit(target(((IR.Goto) s).label));
+            } else if (s instanceof IR.CondGoto) {
+                final var g = (IR.CondGoto) s;
+                emit(JNZ, slot(g.cond));
+                emit(target(g.target));
+            } else if (s instanceof IR.IfFalseGoto) {
+                final var g = (IR.IfFalseGoto) s;
+                emit(JZ, slot(g.cond));
+                emit(target(g.target));
+            } else if (s instanceof IR.CmpGoto) {
+                cmpGoto((IR.CmpGoto) s);
+            } else if (s instanceof IR.Lit) {
+                final var l = (IR.Lit) s;
+                if (l.rhs instanceof Integer)
+                    emit(LIT_I, slot(l.lhs), (Integer) l.rhs);
+                else if (l.rhs instanceof Boolean)
+                    emit(LIT_I, slot(l.lhs), (Boolean) l.rhs ? 1 : 0);
+                else {
+                    consts.add(l.rhs);
+                    emit(LIT_R, slot(l.lhs), consts.size() - 1);
+                }
+            } else if (s instanceof IR.Assignment) {
+                final var a = (IR.Assignment) s;
+                emit(isInt(a.lhs) ? MOV_I : MOV_R, slot(a.lhs), slot(a.rhs));
+            } else if (s instanceof IR.New) {
+                final var n = (IR.New) s;
+                final var id = classIds.get(n.type);
+                if (id == null)
+                    throw new IllegalArgumentException("unknown class " + n.type + " in " + m.name);
+                emit(NEW, slot(n.lhs), id);
+            } else if (s instanceof IR.Access) {
+                final var a = (IR.Access) s;
+                final var l = layout(a.rhs);
+                final int op = kind(l.types.getOrDefault(a.member, "Void")) == INT ? GET_I : GET_R;
+                emit(op, slot(a.lhs), slot(a.rhs), field(l, a.member));
+            } else if (s instanceof IR.FieldAssignment) {
+                final var a = (IR.FieldAssignment) s;
+                final var l = layout(a.lhs);
+                final int op = kind(l.types.getOrDefault(a.id, "Void")) == INT ? PUT_I : PUT_R;
+                emit(op, slot(a.lhs), field(l, a.id), slot(a.rhs));
+            } else if (s instanceof IR.BinOp) {
+                binOp((IR.BinOp) s);
+            } else if (s instanceof IR.UnOp) {
+                final var u = (IR.UnOp) s;
+                emit(u.op.equals("-") ? NEG : NOT, slot(u.lhs), slot(u.rhs));
+            } else if (s instanceof IR.Call) {
+                call((IR.Call) s);
+            } else if (s instanceof IR.Syscall) {
+                syscall((IR.Syscall) s);
+            } else if (s instanceof IR.Return) {
+                final var r = (IR.Return) s;
+                if (r.id == null || out.ret == VOID)
+                    emit(RET);
+                else
+                    emit(out.ret == INT ? RET_I : RET_R, slot(r.id));
+            } else {
+                throw new IllegalArgumentException("unknown statement " + s.getClass().getSimpleName());
+            }
+        }
+
+        void binOp(IR.BinOp b) {
+            final boolean ints = isInt(b.a);
+            final int op;
+            switch (b.op) {
+                case "+":
+                    op = ints ? ADD : CONCAT;
+                    break;
+                case "-":
+                    op = SUB;
+                    break;
+                case "*":
+                    op = MUL;
+                    break;
+                case "/":
+                    op = DIV;
+                    break;
+                case "<":
+                    op = LT;
+                    break;
+                case "<=":
+                    op = LE;
+                    break;
+                case ">":
+                    op = GT;
+                    break;
+                case ">=":
+                    op = GE;
+                    break;
+                case "==":
+                    op = ints ? EQ_I : EQ_R;
+                    break;
+                case "!=":
+                    op = ints ? NE_I : NE_R;
+                    break;
+                case "&&":
+                    op = AND;
+                    break;
+                case "||":
+                    op = OR;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown operator " + b.op + " in " + m.name);
+            }
+            emit(op, slot(b.lhs), slot(b.a), slot(b.b));
+        }
+
+        void cmpGoto(IR.CmpGoto g) {
+            if (!isInt(g.a) || !isInt(g.b))
+                throw new IllegalArgumentException("comparison of references in a jump in " + m.name);
+            final int op;
+            switch (g.op) {
+                case "<":
+                    op = JLT;
+                    break;
+                case "<=":
+                    op = JLE;
+                    break;
+                case ">":
+                    op = JGT;
+                    break;
+                case ">=":
+                    op = JGE;
+                    break;
+                case "==":
+                    op = JEQ;
+                    break;
+                case "!=":
+                    op = JNE;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown comparison " + g.op + " in " + m.name);
+            }
+            emit(op, slot(g.a), slot(g.b));
+            emit(target(g.target));
+        }
+
+        void call(IR.Call c) {
+            final var id = methodIds.get(c.rhs);
+            if (id == null)
+                throw new IllegalArgumentException("unknown method " + c.rhs + " in " + m.name);
+            final int dst = c.lhs == null || kind(type(c.lhs)) == VOID ? -1 : slot(c.lhs);
+            emit(CALL, dst, id, c.args.size());
+            for (String a : c.args)
+                emit(slot(a));
+        }
+
+        void syscall(IR.Syscall s) {
+            if (s.args.size() != 1)
+                throw new IllegalArgumentException(s.lhs + " takes one argument in " + m.name);
+            final var arg = s.args.get(0);
+            final var type = type(arg);
+            final int k = kind(type);
+            if (s.lhs.equals("println"))
+                emit(k == REF ? PRINT_R : type.equals("Bool") ? PRINT_B : PRINT_I, slot(arg));
+            else if (s.lhs.equals("readln"))
+                emit(k == REF ? READ_R : type.equals("Bool") ? READ_B : READ_I, slot(arg));
+            else
+                throw new IllegalArgumentException("unknown syscall " + s.lhs + " in " + m.name);
+        }
+    }
+
+    public static IR.Program load(String fileLoc) throws Exception {
+        if (fileLoc.endsWith(".jir"))
+            return IRBinary.read(Paths.get(fileLoc)).toProgram();
+        final var ast = parser.parse(fileLoc);
+        final var checked = StaticChecker.check(ast);
+        if (checked.isErr())
+            throw new IllegalArgumentException(checked.err.toString());
+        final var ir = IRGen.generateProgram(ast);
+        if (ir.isErr())
+            throw new IllegalArgumentException(ir.err.toString());
+        return ir.v;
+    }
+
+    public static void main(String[] argv) throws Exception {
+        boolean time = false;
+        boolean optimize = false;
+        String file = null;
+        for (String arg : argv) {
+            if (arg.equals("--time"))
+                time = true;
+            else if (arg.equals("-O"))
+                optimize = true;
+            else
+                file = arg;
+        }
+        if (file == null) {
+            System.err.println("usage: Interpreter [--time] [-O] file.j|file.jir");
+            System.exit(2);
+        }
+
+        IR.Program program;
+        try {
+            program = load(file);
+            if (optimize)
+                program = Optimizer.optimize(program);
+        } catch (IllegalArgumentException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        final var out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        final var interpreter = new Interpreter(program, new BufferedReader(new InputStreamReader(System.in)), out);
+        final long start = System.nanoTime();
+        try {
+            interpreter.run();
+        } catch (RuntimeError e) {
+            System.err.println("runtime error: " + e.getMessage());
+            System.exit(1);
+        }
+        if (time)
+            System.err.println(String.format("run: %.1f ms", (System.nanoTime() - start) / 1e6));
+    }
+}
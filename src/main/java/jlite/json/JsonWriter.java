@@ -0,0 +1,163 @@
+package jlite.json;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Minimal streaming JSON writer. Pretty output is laid out and escaped
+ * exactly like Gson's pretty printer (html-safe, two space indent).
+ */
+public class JsonWriter implements Flushable {
+    private static final String[] ESCAPES = new String[128];
+
+    static {
+        for (int c = 0; c < 0x20; c++)
+            ESCAPES[c] = String.format("\\u%04x", c);
+        ESCAPES['"'] = "\\\"";
+        ESCAPES['\\'] = "\\\\";
+        ESCAPES['\t'] = "\\t";
+        ESCAPES['\b'] = "\\b";
+        ESCAPES['\n'] = "\\n";
+        ESCAPES['\r'] = "\\r";
+        ESCAPES['\f'] = "\\f";
+        ESCAPES['<'] = "\\u003c";
+        ESCAPES['>'] = "\\u003e";
+        ESCAPES['&'] = "\\u0026";
+        ESCAPES['='] = "\\u003d";
+        ESCAPES['\''] = "\\u0027";
+    }
+
+    private final Writer out;
+    private final boolean pretty;
+    private boolean[] nonEmpty = new boolean[32];
+    private int depth = 0;
+    private boolean afterName = false;
+
+    public JsonWriter(Writer out, boolean pretty) {
+        this.out = out;
+        this.pretty = pretty;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        beforeValue();
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        beforeValue();
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        if (nonEmpty[depth - 1])
+            out.write(',');
+        nonEmpty[depth - 1] = true;
+        newline();
+        string(name);
+        out.write(pretty ? ": " : ":");
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String s) throws IOException {
+        if (s == null)
+            return nullValue();
+        beforeValue();
+        string(s);
+        return this;
+    }
+
+    public JsonWriter value(int i) throws IOException {
+        beforeValue();
+        out.write(Integer.toString(i));
+        return this;
+    }
+
+    public JsonWriter value(boolean b) throws IOException {
+        beforeValue();
+        out.write(b ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        out.write("null");
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private JsonWriter open(char c) throws IOException {
+        if (depth == nonEmpty.length)
+            nonEmpty = Arrays.copyOf(nonEmpty, depth * 2);
+        nonEmpty[depth++] = false;
+        out.write(c);
+        return this;
+    }
+
+    private JsonWriter close(char c) throws IOException {
+        if (nonEmpty[--depth])
+            newline();
+        out.write(c);
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth == 0)
+            return;
+        if (nonEmpty[depth - 1])
+            out.write(',');
+        nonEmpty[depth - 1] = true;
+        newline();
+    }
+
+    private void newline() throws IOException {
+        if (!pretty)
+            return;
+        out.write('\n');
+        for (int i = 0; i < depth; i++)
+            out.write("  ");
+    }
+
+    private void string(String s) throws IOException {
+        out.write('"');
+        int last = 0;
+        final int len = s.length();
+        for (int i = 0; i < len; i++) {
+            final char c = s.charAt(i);
+            final String esc;
+            if (c < 128)
+                esc = ESCAPES[c];
+            else if (c == '\u2028')
+                esc = "\\u2028";
+            else if (c == '\u2029')
+                esc = "\\u2029";
+            else
+                continue;
+            if (esc == null)
+                continue;
+            out.write(s, last, i - last);
+            out.write(esc);
+            last = i + 1;
+        }
+        out.write(s, last, len - last);
+        out.write('"');
+    }
+}
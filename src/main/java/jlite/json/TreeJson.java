@@ -0,0 +1,333 @@
+package jlite.json;
+
+import java.io.IOException;
+import java.util.List;
+
+import jlite.codegen.IR;
+import jlite.parser.Ast;
+
+/**
+ * Writes {@link Ast} and {@link IR} trees without reflection. Field names
+ * and order follow what Gson produced for these classes: declared fields
+ * first, then the superclass', and null fields left out.
+ */
+public class TreeJson {
+    private final JsonWriter w;
+
+    public TreeJson(JsonWriter w) {
+        this.w = w;
+    }
+
+    public void write(Ast.Program p) throws IOException {
+        w.beginObject();
+        w.name("main");
+        cls(p.main);
+        w.name("classes").beginArray();
+        for (Ast.Cls c : p.classes)
+            cls(c);
+        w.endArray();
+        w.endObject();
+    }
+
+    public void write(Ast.Method m) throws IOException {
+        method(m);
+    }
+
+    void cls(Ast.Cls c) throws IOException {
+        w.beginObject();
+        string("name", c.name);
+        w.name("fields").beginArray();
+        for (Ast.Field f : c.fields) {
+            w.beginObject();
+            type("type", f.type);
+            id("id", f.id);
+            w.endObject();
+        }
+        w.endArray();
+        w.name("methods").beginArray();
+        for (Ast.Method m : c.methods)
+            method(m);
+        w.endArray();
+        w.endObject();
+    }
+
+    void method(Ast.Method m) throws IOException {
+        w.beginObject();
+        type("ret", m.ret);
+        w.name("params").beginArray();
+        for (Ast.Param p : m.params) {
+            w.beginObject();
+            type("type", p.type);
+            id("id", p.id);
+            w.endObject();
+        }
+        w.endArray();
+        w.name("body").beginObject();
+        w.name("vars").beginArray();
+        for (Ast.Var v : m.body.vars) {
+            w.beginObject();
+            type("type", v.type);
+            id("id", v.id);
+            w.endObject();
+        }
+        w.endArray();
+        stmts("stmts", m.body.stmts);
+        w.endObject();
+        id("id", m.id);
+        w.endObject();
+    }
+
+    void type(String name, Ast.Type t) throws IOException {
+        if (t == null) return;
+        w.name(name).beginObject();
+        string("name", t.name);
+        w.endObject();
+    }
+
+    void id(String name, Ast.Id id) throws IOException {
+        if (id == null) return;
+        w.name(name);
+        expr(id);
+    }
+
+    void block(String name, Ast.Block b) throws IOException {
+        if (b == null) return;
+        w.name(name).beginObject();
+        stmts("stmts", b.stmts);
+        w.endObject();
+    }
+
+    void stmts(String name, List<Ast.Stmt> stmts) throws IOException {
+        if (stmts == null) return;
+        w.name(name).beginArray();
+        for (Ast.Stmt s : stmts)
+            stmt(s);
+        w.endArray();
+    }
+
+    void exprs(String name, List<Ast.Expr> exprs) throws IOException {
+        if (exprs == null) return;
+        w.name(name).beginArray();
+        for (Ast.Expr e : exprs)
+            expr(e);
+        w.endArray();
+    }
+
+    void expr(String name, Ast.Expr e) throws IOException {
+        if (e == null) return;
+        w.name(name);
+        expr(e);
+    }
+
+    void stmt(Ast.Stmt s) throws IOException {
+        if (s instanceof Ast.Expr) {
+            expr((Ast.Expr) s);
+            return;
+        }
+        w.beginObject();
+        if (s instanceof Ast.While) {
+            final var b = (Ast.While) s;
+            expr("cond", b.cond);
+            block("block", b.block);
+        } else if (s instanceof Ast.If) {
+            final var b = (Ast.If) s;
+            expr("cond", b.cond);
+            block("cons", b.cons);
+            block("alt", b.alt);
+        } else if (s instanceof Ast.Assignment) {
+            final var b = (Ast.Assignment) s;
+            expr("lhs", b.lhs);
+            expr("rhs", b.rhs);
+        } else if (s instanceof Ast.FieldAssignment) {
+            final var b = (Ast.FieldAssignment) s;
+            expr("lhs", b.lhs);
+            id("id", b.id);
+            expr("rhs", b.rhs);
+        } else if (s instanceof Ast.Return) {
+            expr("expr", ((Ast.Return) s).expr);
+        } else if (s instanceof Ast.Syscall) {
+            final var b = (Ast.Syscall) s;
+            string("name", b.name);
+            exprs("args", b.args);
+        }
+        w.endObject();
+    }
+
+    void expr(Ast.Expr ex) throws IOException {
+        w.beginObject();
+        if (ex instanceof Ast.Id) {
+            string("id", ((Ast.Id) ex).id);
+        } else if (ex instanceof Ast.Lit) {
+            final var v = ((Ast.Lit) ex).v;
+            if (v != null) {
+                w.name("v");
+                literal(v);
+            }
+        } else if (ex instanceof Ast.BinOp) {
+            final var o = (Ast.BinOp) ex;
+            string("op", o.op);
+            expr("l", o.l);
+            expr("r", o.r);
+        } else if (ex instanceof Ast.UnOp) {
+            final var o = (Ast.UnOp) ex;
+            string("op", o.op);
+            expr("e", o.e);
+        } else if (ex instanceof Ast.New) {
+            string("name", ((Ast.New) ex).name);
+        } else if (ex instanceof Ast.Access) {
+            final var a = (Ast.Access) ex;
+            expr("e", a.e);
+            id("id", a.id);
+        } else if (ex instanceof Ast.Call) {
+            final var c = (Ast.Call) ex;
+            expr("callee", c.callee);
+            exprs("args", c.args);
+        }
+        w.endObject();
+    }
+
+    public void write(IR.Program p) throws IOException {
+        if (p == null) {
+            w.nullValue();
+            return;
+        }
+        w.beginObject();
+        w.name("decls").beginArray();
+        for (IR.Data d : p.decls) {
+            w.beginObject();
+            string("name", d.name);
+            w.name("fields").beginArray();
+            for (IR.Field f : d.fields) {
+                w.beginObject();
+                string("type", f.type);
+                string("id", f.id);
+                w.endObject();
+            }
+            w.endArray();
+            w.endObject();
+        }
+        w.endArray();
+        w.name("methods").beginArray();
+        for (IR.Method m : p.methods)
+            method(m);
+        w.endArray();
+        w.endObject();
+    }
+
+    void method(IR.Method m) throws IOException {
+        w.beginObject();
+        string("name", m.name);
+        string("ret", m.ret);
+        w.name("params").beginArray();
+        for (IR.Param p : m.params) {
+            w.beginObject();
+            string("type", p.type);
+            string("id", p.id);
+            w.endObject();
+        }
+        w.endArray();
+        w.name("body").beginArray();
+        for (IR.Stmt s : m.body)
+            stmt(s);
+        w.endArray();
+        w.endObject();
+    }
+
+    void stmt(IR.Stmt s) throws IOException {
+        w.beginObject();
+        if (s instanceof IR.Var) {
+            final var v = (IR.Var) s;
+            string("type", v.type);
+            string("name", v.name);
+        } else if (s instanceof IR.New) {
+            final var v = (IR.New) s;
+            string("lhs", v.lhs);
+            string("type", v.type);
+        } else if (s instanceof IR.Assignment) {
+            final var v = (IR.Assignment) s;
+            string("lhs", v.lhs);
+            string("rhs", v.rhs);
+        } else if (s instanceof IR.FieldAssignment) {
+            final var v = (IR.FieldAssignment) s;
+            string("lhs", v.lhs);
+            string("id", v.id);
+            string("rhs", v.rhs);
+        } else if (s instanceof IR.Lit) {
+            final var v = (IR.Lit) s;
+            string("lhs", v.lhs);
+            if (v.rhs != null) {
+                w.name("rhs");
+                literal(v.rhs);
+            }
+        } else if (s instanceof IR.BinOp) {
+            final var v = (IR.BinOp) s;
+            string("lhs", v.lhs);
+            string("op", v.op);
+            string("a", v.a);
+            string("b", v.b);
+        } else if (s instanceof IR.UnOp) {
+            final var v = (IR.UnOp) s;
+            string("lhs", v.lhs);
+            string("op", v.op);
+            string("rhs", v.rhs);
+        } else if (s instanceof IR.Access) {
+            final var v = (IR.Access) s;
+            string("lhs", v.lhs);
+            string("rhs", v.rhs);
+            string("member", v.member);
+        } else if (s instanceof IR.Call) {
+            final var v = (IR.Call) s;
+            string("lhs", v.lhs);
+            string("rhs", v.rhs);
+            strings("args", v.args);
+        } else if (s instanceof IR.Syscall) {
+            final var v = (IR.Syscall) s;
+            string("lhs", v.lhs);
+            strings("args", v.args);
+        } else if (s instanceof IR.Return) {
+            string("id", ((IR.Return) s).id);
+        } else if (s instanceof IR.Label) {
+            string("name", ((IR.Label) s).name);
+        } else if (s instanceof IR.CondGoto) {
+            final var v = (IR.CondGoto) s;
+            string("cond", v.cond);
+            string("target", v.target);
+        } else if (s instanceof IR.IfFalseGoto) {
+            final var v = (IR.IfFalseGoto) s;
+            string("cond", v.cond);
+            string("target", v.target);
+        } else if (s instanceof IR.CmpGoto) {
+            final var v = (IR.CmpGoto) s;
+            string("op", v.op);
+            string("a", v.a);
+            string("b", v.b);
+            string("target", v.target);
+        } else if (s instanceof IR.Goto) {
+            string("label", ((IR.Goto) s).label);
+        }
+        string("_t", s.getClass().getName());
+        w.endObject();
+    }
+
+    void string(String name, String v) throws IOException {
+        if (v == null) return;
+        w.name(name).value(v);
+    }
+
+    void strings(String name, List<String> vs) throws IOException {
+        if (vs == null) return;
+        w.name(name).beginArray();
+        for (String v : vs)
+            w.value(v);
+        w.endArray();
+    }
+
+    void literal(Object v) throws IOException {
+        if (v instanceof Integer)
+            w.value((int) (Integer) v);
+        else if (v instanceof Boolean)
+            w.value((boolean) (Boolean) v);
+        else
+            w.value(v.toString());
+    }
+}
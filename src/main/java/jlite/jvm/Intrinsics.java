@@ -0,0 +1,84 @@
+package jlite.jvm;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+
+/**
+ * What generated classes call for syscalls and string operations. It only
+ * depends on the JDK, so {@link JvmBackend#writeJar} copies it into jars
+ * next to the program's own classes.
+ */
+public final class Intrinsics {
+    public static final class Fault extends RuntimeException {
+        public Fault(String message) {
+            super(message);
+        }
+    }
+
+    static PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+    static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+
+    static {
+        // a program run from a jar just returns from main, or dies
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> out.flush()));
+    }
+
+    private Intrinsics() {
+    }
+
+    // for runs inside the compiler's own JVM
+    public static void use(BufferedReader in, PrintStream out) {
+        Intrinsics.in = in;
+        Intrinsics.out = out;
+    }
+
+    public static void println(int v) {
+        out.println(v);
+    }
+
+    public static void println(boolean v) {
+        out.println(v);
+    }
+
+    public static void println(String v) {
+        out.println(v);
+    }
+
+    public static int readInt() {
+        try {
+            return Integer.parseInt(readln().trim());
+        } catch (NumberFormatException e) {
+            throw new Fault("readln: not an Int");
+        }
+    }
+
+    public static boolean readBool() {
+        return Boolean.parseBoolean(readln().trim());
+    }
+
+    public static String readString() {
+        return readln();
+    }
+
+    public static String concat(String a, String b) {
+        return a + b;
+    }
+
+    static String readln() {
+        out.flush();
+        try {
+            final var line = in.readLine();
+            if (line == null)
+                throw new Fault("readln: end of input");
+            return line;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
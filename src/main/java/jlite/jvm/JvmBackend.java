@@ -0,0 +1,571 @@
+package jlite.jvm;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodTooLargeException;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import jlite.analysis.Optimizer;
+import jlite.codegen.IR;
+import jlite.interp.Interpreter;
+
+/**
+ * Compiles an {@link IR.Program} to JVM classes. Every {@link IR.Data}
+ * becomes a class with typed public fields, and every {@link IR.Method} a
+ * static method of its class that takes {@code this} as its first param.
+ * Params, vars and temps become JVM locals of their own types, and labels
+ * and gotos become real branches, so the JIT sees ordinary code.
+ *
+ * The main class also gets a {@code main(String[])}, so a program written
+ * to a jar runs with {@code java -jar}.
+ *
+ * <pre>
+ *   java -cp ... jlite.jvm.JvmBackend [--time] [--jar=out.jar] file.j|file.jir
+ * </pre>
+ */
+public class JvmBackend implements Opcodes {
+    static final String INTRINSICS = "jlite/jvm/Intrinsics";
+
+    final IR.Program p;
+    final Map<String, IR.Data> decls = new HashMap<>();
+    final Map<String, IR.Method> methods = new HashMap<>();
+
+    JvmBackend(IR.Program p) {
+        this.p = p;
+        p.decls.forEach(d -> decls.put(d.name, d));
+        p.methods.forEach(m -> methods.put(m.name, m));
+    }
+
+    // internal class name to class file, the main class first
+    public static Map<String, byte[]> compile(IR.Program p) {
+        if (p.decls.isEmpty())
+            throw new IllegalArgumentException("no main class");
+        final var backend = new JvmBackend(p);
+        final var classes = new LinkedHashMap<String, byte[]>();
+        for (IR.Data d : p.decls)
+            classes.put(d.name, backend.genClass(d));
+        return classes;
+    }
+
+    public static String mainClass(IR.Program p) {
+        return p.decls.get(0).name;
+    }
+
+    static String desc(String type) {
+        switch (type) {
+            case "Int":
+                return "I";
+            case "Bool":
+                return "Z";
+            case "String":
+                return "Ljava/lang/String;";
+            case "Void":
+                return "V";
+            default:
+                return "L" + type + ";";
+        }
+    }
+
+    static String desc(IR.Method m) {
+        final var sb = new StringBuilder("(");
+        m.params.forEach(param -> sb.append(desc(param.type)));
+        return sb.append(')').append(desc(m.ret)).toString();
+    }
+
+    static boolean isInt(String type) {
+        return type.equals("Int") || type.equals("Bool");
+    }
+
+    static String owner(IR.Method m) {
+        return m.name.substring(0, m.name.indexOf("::"));
+    }
+
+    static String simpleName(IR.Method m) {
+        return m.name.substring(m.name.indexOf("::") + 2);
+    }
+
+    byte[] genClass(IR.Data d) {
+        final var cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            // every reference a frame can hold is a String or a program
+            // class, and none of those extend each other
+            @Override
+            protected String getCommonSuperClass(String a, String b) {
+                return "java/lang/Object";
+            }
+        };
+        cw.visit(V11, ACC_PUBLIC | ACC_SUPER, d.name, null, "java/lang/Object", null);
+        for (IR.Field f : d.fields)
+            cw.visitField(ACC_PUBLIC, f.id, desc(f.type), null, null).visitEnd();
+
+        final var init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        // the class loader would reject a second method with the same
+        // signature, so report it here instead
+        final var signatures = new HashSet<String>();
+        for (IR.Method m : p.methods) {
+            if (!owner(m).equals(d.name))
+                continue;
+            if (!signatures.add(simpleName(m) + desc(m)))
+                throw new IllegalArgumentException(String.format("%s is defined twice with signature %s",
+                        m.name, desc(m)));
+            new MethodGen(m, cw.visitMethod(ACC_PUBLIC | ACC_STATIC, simpleName(m), desc(m), null, null)).gen();
+        }
+
+        if (d == p.decls.get(0))
+            genEntry(cw, d);
+        cw.visitEnd();
+        try {
+            return cw.toByteArray();
+        } catch (MethodTooLargeException e) {
+            throw new IllegalArgumentException(String.format("%s::%s is too large for a JVM method",
+                    e.getClassName(), e.getMethodName()));
+        }
+    }
+
+    // main(String[]) calls the program's main on a new instance, other
+    // params zeroed
+    void genEntry(ClassWriter cw, IR.Data d) {
+        final var m = methods.get(d.name + "::main");
+        if (m == null)
+            throw new IllegalArgumentException("no main method");
+        final var mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(NEW, d.name);
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, d.name, "<init>", "()V", false);
+        for (int i = 1; i < m.params.size(); i++)
+            mv.visitInsn(isInt(m.params.get(i).type) ? ICONST_0 : ACONST_NULL);
+        mv.visitMethodInsn(INVOKESTATIC, d.name, "main", desc(m), false);
+        if (!m.ret.equals("Void"))
+            mv.visitInsn(POP);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    class MethodGen {
+        final IR.Method m;
+        final MethodVisitor mv;
+        final Map<String, Integer> locals = new HashMap<>();
+        final Map<String, String> types = new HashMap<>();
+        final Map<String, Label> labels = new HashMap<>();
+        int next;
+
+        MethodGen(IR.Method m, MethodVisitor mv) {
+            this.m = m;
+            this.mv = mv;
+        }
+
+        void gen() {
+            mv.visitCode();
+            for (IR.Param param : m.params)
+                declare(param.type, param.id);
+            // the verifier wants every local assigned before any branch
+            for (IR.Stmt s : m.body) {
+                if (!(s instanceof IR.Var))
+                    continue;
+                final var v = (IR.Var) s;
+                if (locals.containsKey(v.name))
+                    continue;
+                // results of Void calls are declared but never stored
+                if (v.type.equals("Void")) {
+                    types.put(v.name, v.type);
+                    continue;
+                }
+                declare(v.type, v.name);
+                mv.visitInsn(isInt(v.type) ? ICONST_0 : ACONST_NULL);
+                store(v.name);
+            }
+
+            for (IR.Stmt s : m.body)
+                stmt(s);
+
+            // falling off the end returns the type's zero
+            if (m.ret.equals("Void")) {
+                mv.visitInsn(RETURN);
+            } else {
+                mv.visitInsn(isInt(m.ret) ? ICONST_0 : ACONST_NULL);
+                mv.visitInsn(isInt(m.ret) ? IRETURN : ARETURN);
+            }
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        void declare(String type, String name) {
+            types.put(name, type);
+            locals.put(name, next++);
+        }
+
+        String type(String name) {
+            final var type = types.get(name);
+            if (type == null)
+                throw new IllegalArgumentException("undeclared " + name + " in " + m.name);
+            return type;
+        }
+
+        void load(String name) {
+            mv.visitVarInsn(isInt(type(name)) ? ILOAD : ALOAD, locals.get(name));
+        }
+
+        void store(String name) {
+            mv.visitVarInsn(isInt(type(name)) ? ISTORE : ASTORE, locals.get(name));
+        }
+
+        Label label(String name) {
+            return labels.computeIfAbsent(name, n -> new Label());
+        }
+
+        String fieldType(String cls, String field) {
+            final var d = decls.get(cls);
+            if (d != null)
+                for (IR.Field f : d.fields)
+                    if (f.id.equals(field))
+                        return f.type;
+            throw new IllegalArgumentException("unknown field " + cls + "." + field + " in " + m.name);
+        }
+
+        void push(int v) {
+            if (v >= -1 && v <= 5)
+                mv.visitInsn(ICONST_0 + v);
+            else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE)
+                mv.visitIntInsn(BIPUSH, v);
+            else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE)
+                mv.visitIntInsn(SIPUSH, v);
+            else
+                mv.visitLdcInsn(v);
+        }
+
+        void stmt(IR.Stmt s) {
+            if (s instanceof IR.Var) {
+                // declared up front
+            } else if (s instanceof IR.Label) {
+                mv.visitLabel(label(((IR.Label) s).name));
+            } else if (s instanceof IR.Goto) {
+                mv.visitJumpInsn(GOTO, label(((IR.Goto) s).label));
+            } else if (s instanceof IR.CondGoto) {
+                final var g = (IR.CondGoto) s;
+                load(g.cond);
+                mv.visitJumpInsn(IFNE, label(g.target));
+            } else if (s instanceof IR.IfFalseGoto) {
+                final var g = (IR.IfFalseGoto) s;
+                load(g.cond);
+                mv.visitJumpInsn(IFEQ, label(g.target));
+            } else if (s instanceof IR.CmpGoto) {
+                final var g = (IR.CmpGoto) s;
+                load(g.a);
+                load(g.b);
+                mv.visitJumpInsn(jump(g.op), label(g.target));
+            } else if (s instanceof IR.Lit) {
+                final var l = (IR.Lit) s;
+                if (l.rhs instanceof Integer)
+                    push((Integer) l.rhs);
+                else if (l.rhs instanceof Boolean)
+                    push((Boolean) l.rhs ? 1 : 0);
+                else if (l.rhs == null)
+                    mv.visitInsn(ACONST_NULL);
+                else
+                    mv.visitLdcInsn(l.rhs);
+                store(l.lhs);
+            } else if (s instanceof IR.Assignment) {
+                final var a = (IR.Assignment) s;
+                load(a.rhs);
+                store(a.lhs);
+            } else if (s instanceof IR.New) {
+                final var n = (IR.New) s;
+                if (!decls.containsKey(n.type))
+                    throw new IllegalArgumentException("unknown class " + n.type + " in " + m.name);
+                mv.visitTypeInsn(NEW, n.type);
+                mv.visitInsn(DUP);
+                mv.visitMethodInsn(INVOKESPECIAL, n.type, "<init>", "()V", false);
+                store(n.lhs);
+            } else if (s instanceof IR.Access) {
+                final var a = (IR.Access) s;
+                final var cls = type(a.rhs);
+                load(a.rhs);
+                mv.visitFieldInsn(GETFIELD, cls, a.member, desc(fieldType(cls, a.member)));
+                store(a.lhs);
+            } else if (s instanceof IR.FieldAssignment) {
+                final var a = (IR.FieldAssignment) s;
+                final var cls = type(a.lhs);
+                load(a.lhs);
+                load(a.rhs);
+                mv.visitFieldInsn(PUTFIELD, cls, a.id, desc(fieldType(cls, a.id)));
+            } else if (s instanceof IR.BinOp) {
+                binOp((IR.BinOp) s);
+            } else if (s instanceof IR.UnOp) {
+                final var u = (IR.UnOp) s;
+                load(u.rhs);
+                if (u.op.equals("-")) {
+                    mv.visitInsn(INEG);
+                } else {
+                    mv.visitInsn(ICONST_1);
+                    mv.visitInsn(IXOR);
+                }
+                store(u.lhs);
+            } else if (s instanceof IR.Call) {
+                call((IR.Call) s);
+            } else if (s instanceof IR.Syscall) {
+                syscall((IR.Syscall) s);
+            } else if (s instanceof IR.Return) {
+                final var r = (IR.Return) s;
+                if (r.id == null || m.ret.equals("Void")) {
+                    mv.visitInsn(RETURN);
+                } else {
+                    load(r.id);
+                    mv.visitInsn(isInt(m.ret) ? IRETURN : ARETURN);
+                }
+            } else {
+                throw new IllegalArgumentException("unknown statement " + s.getClass().getSimpleName());
+            }
+        }
+
+        void binOp(IR.BinOp b) {
+            final boolean ints = isInt(type(b.a));
+            load(b.a);
+            load(b.b);
+            switch (b.op) {
+                case "+":
+                    if (ints)
+                        mv.visitInsn(IADD);
+                    else
+                        mv.visitMethodInsn(INVOKESTATIC, INTRINSICS, "concat",
+                                "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;", false);
+                    break;
+                case "-":
+                    mv.visitInsn(ISUB);
+                    break;
+                case "*":
+                    mv.visitInsn(IMUL);
+                    break;
+                case "/":
+                    mv.visitInsn(IDIV);
+                    break;
+                case "&&":
+                    mv.visitInsn(IAND);
+                    break;
+                case "||":
+                    mv.visitInsn(IOR);
+                    break;
+                case "<":
+                    compare(IF_ICMPLT);
+                    break;
+                case "<=":
+                    compare(IF_ICMPLE);
+                    break;
+                case ">":
+                    compare(IF_ICMPGT);
+                    break;
+                case ">=":
+                    compare(IF_ICMPGE);
+                    break;
+                case "==":
+                    if (ints) {
+                        compare(IF_ICMPEQ);
+                    } else {
+                        mv.visitMethodInsn(INVOKESTATIC, "java/util/Objects", "equals",
+                                "(Ljava/lang/Object;Ljava/lang/Object;)Z", false);
+                    }
+                    break;
+                case "!=":
+                    if (ints) {
+                        compare(IF_ICMPNE);
+                    } else {
+                        mv.visitMethodInsn(INVOKESTATIC, "java/util/Objects", "equals",
+                                "(Ljava/lang/Object;Ljava/lang/Object;)Z", false);
+                        mv.visitInsn(ICONST_1);
+                        mv.visitInsn(IXOR);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown operator " + b.op + " in " + m.name);
+            }
+            store(b.lhs);
+        }
+
+        int jump(String op) {
+            switch (op) {
+                case "<":
+                    return IF_ICMPLT;
+                case "<=":
+                    return IF_ICMPLE;
+                case ">":
+                    return IF_ICMPGT;
+                case ">=":
+                    return IF_ICMPGE;
+                case "==":
+                    return IF_ICMPEQ;
+                case "!=":
+                    return IF_ICMPNE;
+                default:
+                    throw new IllegalArgumentException("unknown comparison " + op + " in " + m.name);
+            }
+        }
+
+        // leaves 1 if the comparison holds, else 0
+        void compare(int jump) {
+            final var yes = new Label();
+            final var end = new Label();
+            mv.visitJumpInsn(jump, yes);
+            mv.visitInsn(ICONST_0);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(yes);
+            mv.visitInsn(ICONST_1);
+            mv.visitLabel(end);
+        }
+
+        void call(IR.Call c) {
+            final var callee = methods.get(c.rhs);
+            if (callee == null)
+                throw new IllegalArgumentException("unknown method " + c.rhs + " in " + m.name);
+            c.args.forEach(this::load);
+            mv.visitMethodInsn(INVOKESTATIC, owner(callee), simpleName(callee), desc(callee), false);
+            if (callee.ret.equals("Void"))
+                return;
+            if (c.lhs != null && !type(c.lhs).equals("Void"))
+                store(c.lhs);
+            else
+                mv.visitInsn(POP);
+        }
+
+        void syscall(IR.Syscall s) {
+            if (s.args.size() != 1)
+                throw new IllegalArgumentException(s.lhs + " takes one argument in " + m.name);
+            final var arg = s.args.get(0);
+            final var type = type(arg);
+            if (s.lhs.equals("println")) {
+                load(arg);
+                mv.visitMethodInsn(INVOKESTATIC, INTRINSICS, "println",
+                        "(" + (isInt(type) ? desc(type) : "Ljava/lang/String;") + ")V", false);
+            } else if (s.lhs.equals("readln")) {
+                final var read = type.equals("Int") ? "readInt" : type.equals("Bool") ? "readBool" : "readString";
+                mv.visitMethodInsn(INVOKESTATIC, INTRINSICS, read, "()" + desc(isInt(type) ? type : "String"), false);
+                store(arg);
+            } else {
+                throw new IllegalArgumentException("unknown syscall " + s.lhs + " in " + m.name);
+            }
+        }
+    }
+
+    // loads the classes in a fresh loader and runs main, mapping JVM faults
+    // to the interpreter's runtime errors
+    public static void run(Map<String, byte[]> classes, String mainClass, BufferedReader in, PrintStream out) {
+        Intrinsics.use(in, out);
+        try {
+            final var cls = new ProgramLoader(classes, JvmBackend.class.getClassLoader()).loadClass(mainClass);
+            cls.getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+        } catch (InvocationTargetException e) {
+            final var cause = e.getCause();
+            if (cause instanceof NullPointerException)
+                throw new Interpreter.RuntimeError("null dereference");
+            if (cause instanceof ArithmeticException)
+                throw new Interpreter.RuntimeError("division by zero");
+            if (cause instanceof StackOverflowError)
+                throw new Interpreter.RuntimeError("stack overflow");
+            if (cause instanceof Intrinsics.Fault)
+                throw new Interpreter.RuntimeError(cause.getMessage());
+            throw new IllegalStateException(cause);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            out.flush();
+        }
+    }
+
+    public static void writeJar(Map<String, byte[]> classes, String mainClass, Path jar) throws IOException {
+        final var manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, mainClass);
+        try (var out = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+            for (var e : classes.entrySet()) {
+                out.putNextEntry(new JarEntry(e.getKey() + ".class"));
+                out.write(e.getValue());
+                out.closeEntry();
+            }
+            for (Class<?> c : new Class<?>[]{Intrinsics.class, Intrinsics.Fault.class}) {
+                final var name = c.getName().replace('.', '/') + ".class";
+                try (var in = JvmBackend.class.getClassLoader().getResourceAsStream(name)) {
+                    out.putNextEntry(new JarEntry(name));
+                    out.write(in.readAllBytes());
+                    out.closeEntry();
+                }
+            }
+        }
+    }
+
+    public static void main(String[] argv) throws Exception {
+        boolean time = false;
+        boolean optimize = false;
+        Path jar = null;
+        String file = null;
+        for (String arg : argv) {
+            if (arg.equals("--time"))
+                time = true;
+            else if (arg.equals("-O"))
+                optimize = true;
+            else if (arg.startsWith("--jar="))
+                jar = Paths.get(arg.substring("--jar=".length()));
+            else
+                file = arg;
+        }
+        if (file == null) {
+            System.err.println("usage: JvmBackend [--time] [-O] [--jar=out.jar] file.j|file.jir");
+            System.exit(2);
+        }
+
+        final Map<String, byte[]> classes;
+        final String mainClass;
+        try {
+            var program = Interpreter.load(file);
+            if (optimize)
+                program = Optimizer.optimize(program);
+            classes = compile(program);
+            mainClass = mainClass(program);
+        } catch (IllegalArgumentException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (jar != null) {
+            writeJar(classes, mainClass, jar);
+            return;
+        }
+
+        final var out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        final long start = System.nanoTime();
+        try {
+            run(classes, mainClass, new BufferedReader(new InputStreamReader(System.in)), out);
+        } catch (Interpreter.RuntimeError e) {
+            System.err.println("runtime error: " + e.getMessage());
+            System.exit(1);
+        }
+        if (time)
+            System.err.println(String.format("run: %.1f ms", (System.nanoTime() - start) / 1e6));
+    }
+}
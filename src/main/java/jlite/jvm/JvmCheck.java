@@ -0,0 +1,133 @@
+package jlite.jvm;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+
+import jlite.codegen.IR;
+import jlite.codegen.IRGen;
+import jlite.fp.Result;
+import jlite.gen.ProgramGenerator;
+import jlite.interp.AstExecutor;
+import jlite.interp.Interpreter;
+import jlite.parser.Ast;
+import jlite.parser.Source;
+import jlite.parser.parser;
+import jlite.type_check.Checker;
+
+/**
+ * Runs programs through the {@link Interpreter}, the {@link AstExecutor}
+ * and the {@link JvmBackend} and fails unless they all print the same
+ * output and fail the same way. A file's stdin is read from {@code <file>.in} if there is
+ * one; {@code --generated=N} also checks N generated programs.
+ *
+ * <pre>
+ *   java -cp ... jlite.jvm.JvmCheck [--generated=N] test/pass/*.j
+ * </pre>
+ */
+public class JvmCheck {
+    static class Run {
+        final byte[] out;
+        final String error;
+        final double ms;
+
+        Run(byte[] out, String error, double ms) {
+            this.out = out;
+            this.error = error;
+            this.ms = ms;
+        }
+    }
+
+    interface Runner {
+        void run(BufferedReader in, PrintStream out);
+    }
+
+    static Run run(String input, Runner r) {
+        final var bytes = new ByteArrayOutputStream();
+        final var out = new PrintStream(bytes, false);
+        String error = null;
+        final long start = System.nanoTime();
+        try {
+            r.run(new BufferedReader(new StringReader(input)), out);
+        } catch (Interpreter.RuntimeError e) {
+            error = e.getMessage();
+        }
+        final double ms = (System.nanoTime() - start) / 1e6;
+        out.flush();
+        return new Run(bytes.toByteArray(), error, ms);
+    }
+
+    static boolean check(String name, Ast.Program ast, IR.Program p, String input) {
+        final Map<String, byte[]> classes;
+        try {
+            classes = JvmBackend.compile(p);
+        } catch (IllegalArgumentException e) {
+            System.out.println(String.format("%-24s skipped: %s", name, e.getMessage()));
+            return true;
+        }
+        final var types = Checker.check(ast).v;
+        final var interpreted = run(input, (in, out) -> new Interpreter(p, in, out).run());
+        final var executed = run(input, (in, out) -> new AstExecutor(ast, types, in, out).run());
+        final var compiled = run(input, (in, out) -> JvmBackend.run(classes, JvmBackend.mainClass(p), in, out));
+
+        final boolean same = agree(interpreted, executed) && agree(interpreted, compiled);
+        System.out.println(String.format("%-24s %-4s %10d %12.1f %12.1f %12.1f", name, same ? "ok" : "DIFF",
+                interpreted.out.length, interpreted.ms, executed.ms, compiled.ms));
+        if (!same)
+            System.out.println(String.format("  interpreter error: %s, ast error: %s, jvm error: %s",
+                    interpreted.error, executed.error, compiled.error));
+        return same;
+    }
+
+    static boolean agree(Run a, Run b) {
+        return Arrays.equals(a.out, b.out) && (a.error == null) == (b.error == null);
+    }
+
+    public static void main(String[] argv) throws Exception {
+        int generated = 0;
+        boolean ok = true;
+        System.out.println(String.format("%-24s %-4s %10s %12s %12s %12s",
+                "program", "", "out B", "interp ms", "ast ms", "jvm ms"));
+        for (String arg : argv) {
+            if (arg.startsWith("--generated=")) {
+                generated = Integer.parseInt(arg.substring("--generated=".length()));
+                continue;
+            }
+            final Ast.Program ast;
+            final Result<IR.Program> ir;
+            try {
+                ast = parser.parse(arg);
+                ir = IRGen.generateProgram(ast);
+            } catch (Exception e) {
+                System.out.println(String.format("%-24s skipped: %s", arg, e));
+                continue;
+            }
+            if (ir.isErr()) {
+                System.out.println(String.format("%-24s skipped: %s", arg, ir.err));
+                continue;
+            }
+            final var in = Paths.get(arg + ".in");
+            ok &= check(arg, ast, ir.v, Files.exists(in) ? Files.readString(in) : "");
+        }
+        for (int seed = 1; seed <= generated; seed++) {
+            final var c = new ProgramGenerator.Config();
+            c.seed = seed;
+            final var source = ProgramGenerator.generate(c);
+            final var ast = parser.parse(Source.of("gen" + seed, source));
+            final var ir = IRGen.generateProgram(ast);
+            if (ir.isErr()) {
+                System.out.println(String.format("gen%-21d invalid: %s", seed, ir.err));
+                ok = false;
+                continue;
+            }
+            ok &= check("gen" + seed, ast, ir.v, "");
+        }
+        if (!ok)
+            System.exit(1);
+    }
+}
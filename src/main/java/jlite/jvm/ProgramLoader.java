@@ -0,0 +1,33 @@
+package jlite.jvm;
+
+import java.util.Map;
+
+/**
+ * Defines a compiled program's classes from memory. Its own classes are
+ * looked up before the parent's, so a JLite class may share its name with
+ * anything on the compiler's classpath.
+ */
+public class ProgramLoader extends ClassLoader {
+    private final Map<String, byte[]> classes;
+
+    public ProgramLoader(Map<String, byte[]> classes, ClassLoader parent) {
+        super(parent);
+        this.classes = classes;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                final var bytes = classes.get(name.replace('.', '/'));
+                if (bytes == null)
+                    return super.loadClass(name, resolve);
+                c = defineClass(name, bytes, 0, bytes.length);
+            }
+            if (resolve)
+                resolveClass(c);
+            return c;
+        }
+    }
+}
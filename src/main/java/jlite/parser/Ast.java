@@ -4,6 +4,17 @@ import java.util.List;
 
 public class Ast {
     public interface Node {
+        int nid();
+    }
+
+    // ids are dense and handed out by the parser in creation order, so
+    // per-node facts can live in arrays indexed by them instead of maps
+    public abstract static class Tree implements Node {
+        int nid = -1;
+
+        public final int nid() {
+            return nid;
+        }
     }
 
     public interface Expr extends Node {
@@ -13,7 +24,7 @@ public class Ast {
     public interface Stmt extends Node {
     }
 
-    public static class Param implements Node {
+    public static class Param extends Tree {
         public final Type type;
         public final Id id;
 
@@ -23,7 +34,7 @@ public class Ast {
         }
     }
 
-    public static class Body implements Node {
+    public static class Body extends Tree {
         public final List<Var> vars;
         public final List<Stmt> stmts;
 
@@ -33,7 +44,7 @@ public class Ast {
         }
     }
 
-    public static class Cls implements Node {
+    public static class Cls extends Tree {
         public final String name;
         public final List<Field> fields;
         public final List<Method> methods;
@@ -45,7 +56,7 @@ public class Ast {
         }
     }
 
-    public static class Id implements Node, Expr {
+    public static class Id extends Tree implements Expr {
         public final String id;
 
         public Id(String id) {
@@ -63,7 +74,7 @@ public class Ast {
         }
     }
 
-    public static class Member {
+    public static class Member extends Tree {
         public final Id id;
 
         Member(Id id) {
@@ -93,17 +104,20 @@ public class Ast {
         }
     }
 
-    public static class Program implements Node {
+    public static class Program extends Tree {
         public final Main main;
         public final List<Cls> classes;
+        // the number of node ids handed out, this program's included
+        public final int size;
 
-        public Program(Main main, List<Cls> classes) {
+        public Program(Main main, List<Cls> classes, int size) {
             this.main = main;
             this.classes = classes;
+            this.size = size;
         }
     }
 
-    public static class Return implements Node, Stmt {
+    public static class Return extends Tree implements Stmt {
         public final Expr expr;
 
         public Return(Expr expr) {
@@ -111,7 +125,7 @@ public class Ast {
         }
     }
 
-    public static class Type implements Node {
+    public static class Type extends Tree {
         public final String name;
 
         public Type(String name) {
@@ -119,7 +133,7 @@ public class Ast {
         }
     }
 
-    public static class Var implements Node {
+    public static class Var extends Tree {
         public final Type type;
         public final Id id;
 
@@ -129,7 +143,7 @@ public class Ast {
         }
     }
 
-    public static class Block implements Node {
+    public static class Block extends Tree {
         public final List<Stmt> stmts;
 
         public Block(List<Stmt> stmts) {
@@ -137,7 +151,7 @@ public class Ast {
         }
     }
 
-    public static class If implements Node, Stmt {
+    public static class If extends Tree implements Stmt {
         public final Expr cond;
         public final Block cons;
         public final Block alt;
@@ -149,7 +163,7 @@ public class Ast {
         }
     }
 
-    public static class While implements Node, Stmt {
+    public static class While extends Tree implements Stmt {
         public final Expr cond;
         public final Block block;
 
@@ -159,7 +173,7 @@ public class Ast {
         }
     }
 
-    public static class Call implements Node, Stmt, Expr {
+    public static class Call extends Tree implements Stmt, Expr {
         public final Expr callee;
         public final List<Expr> args;
 
@@ -169,7 +183,7 @@ public class Ast {
         }
     }
 
-    public static class Syscall implements Node, Stmt {
+    public static class Syscall extends Tree implements Stmt {
         public final String name;
         public final List<Expr> args;
 
@@ -179,7 +193,7 @@ public class Ast {
         }
     }
 
-    public static class Lit implements Node, Stmt, Expr {
+    public static class Lit extends Tree implements Stmt, Expr {
         public final Object v;
 
         public Lit(Object v) {
@@ -187,7 +201,7 @@ public class Ast {
         }
     }
 
-    public static class BinOp implements Stmt, Expr {
+    public static class BinOp extends Tree implements Stmt, Expr {
         public final String op;
         public final Expr l;
         public final Expr r;
@@ -199,7 +213,7 @@ public class Ast {
         }
     }
 
-    public static class UnOp implements Node, Stmt, Expr {
+    public static class UnOp extends Tree implements Stmt, Expr {
         public final String op;
         public final Expr e;
 
@@ -209,7 +223,7 @@ public class Ast {
         }
     }
 
-    public static class Assignment implements Node, Stmt {
+    public static class Assignment extends Tree implements Stmt {
         public final Expr lhs;
         public final Expr rhs;
 
@@ -219,7 +233,7 @@ public class Ast {
         }
     }
 
-    public static class FieldAssignment implements Node, Stmt {
+    public static class FieldAssignment extends Tree implements Stmt {
         public final Expr lhs;
         public final Id id;
         public final Expr rhs;
@@ -231,7 +245,7 @@ public class Ast {
         }
     }
 
-    public static class New implements Node, Expr {
+    public static class New extends Tree implements Expr {
         public final String name;
 
         public New(String name) {
@@ -239,7 +253,7 @@ public class Ast {
         }
     }
 
-    public static class Access implements Node, Expr {
+    public static class Access extends Tree implements Expr {
         public final Expr e;
         public final Id id;
 
@@ -0,0 +1,103 @@
+package jlite.parser;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A source file read exactly once. Large files are memory-mapped and
+ * decoded straight into the char buffer the scanner reads from; the line
+ * index used for diagnostics is only built when a line is asked for.
+ */
+public class Source {
+    static final long MAP_THRESHOLD = 1 << 20;
+
+    public final String fileLoc;
+    private final char[] text;
+    private final int offset;
+    private final int length;
+    private int[] lineStarts;
+
+    private Source(String fileLoc, CharBuffer chars) {
+        this.fileLoc = fileLoc;
+        this.text = chars.array();
+        this.offset = chars.arrayOffset() + chars.position();
+        this.length = chars.remaining();
+    }
+
+    public static Source read(String fileLoc) throws IOException {
+        try (var ch = FileChannel.open(Paths.get(fileLoc), StandardOpenOption.READ)) {
+            final long size = ch.size();
+            final ByteBuffer bytes;
+            if (size >= MAP_THRESHOLD) {
+                bytes = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && ch.read(bytes) >= 0) ;
+                bytes.flip();
+            }
+            // same charset FileReader used, so the scanner sees the same text
+            return new Source(fileLoc, Charset.defaultCharset().decode(bytes));
+        }
+    }
+
+    public static Source decode(String fileLoc, byte[] bytes) {
+        return new Source(fileLoc, Charset.defaultCharset().decode(ByteBuffer.wrap(bytes)));
+    }
+
+    public static Source of(String fileLoc, String text) {
+        return new Source(fileLoc, CharBuffer.wrap(text.toCharArray()));
+    }
+
+    public Reader reader() {
+        return new CharArrayReader(text, offset, length);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int lineCount() {
+        return lineStarts().length;
+    }
+
+    // 1-based, without the line terminator
+    public String line(int line) {
+        final var starts = lineStarts();
+        if (line < 1 || line > starts.length)
+            return "";
+        final int start = starts[line - 1];
+        int end = line < starts.length ? starts[line] : length;
+        while (end > start && (text[offset + end - 1] == '\n' || text[offset + end - 1] == '\r'))
+            end--;
+        return new String(text, offset + start, end - start);
+    }
+
+    private int[] lineStarts() {
+        if (lineStarts != null)
+            return lineStarts;
+        var starts = new int[64];
+        int n = 0;
+        starts[n++] = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = text[offset + i];
+            if (c == '\r' && i + 1 < length && text[offset + i + 1] == '\n')
+                i++;
+            else if (c != '\r' && c != '\n')
+                continue;
+            if (i + 1 < length) {
+                if (n == starts.length)
+                    starts = Arrays.copyOf(starts, n * 2);
+                starts[n++] = i + 1;
+            }
+        }
+        return lineStarts = Arrays.copyOf(starts, n);
+    }
+}
@@ -0,0 +1,88 @@
+package jlite.parser;
+
+/**
+ * Per-compilation intern table for identifiers and class names.
+ *
+ * The scanner looks names up straight from its char buffer, so a name
+ * that was seen before costs no allocation. Every occurrence of a name
+ * shares one String instance, which makes that instance the name's
+ * handle: later phases can compare names by identity, and hash lookups
+ * hit String's cached hash and identity check.
+ */
+public class Symbols {
+    private String[] table = new String[256];
+    private int[] hashes = new int[256];
+    private int size = 0;
+
+    // seeded with the literals the grammar and later phases use, so those
+    // compare identical to scanned names as well
+    public Symbols() {
+        for (String s : new String[]{"this", "main", "Void", "Int", "Bool", "String"})
+            intern(s);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String intern(String s) {
+        final int h = s.hashCode();
+        final int mask = table.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            final var t = table[i];
+            if (t == null)
+                return insert(i, s, h);
+            if (hashes[i] == h && t.equals(s))
+                return t;
+        }
+    }
+
+    public String intern(char[] buf, int start, int len) {
+        int h = 0;
+        for (int i = 0; i < len; i++)
+            h = 31 * h + buf[start + i];
+
+        final int mask = table.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            final var s = table[i];
+            if (s == null)
+                return insert(i, new String(buf, start, len), h);
+            if (hashes[i] == h && matches(s, buf, start, len))
+                return s;
+        }
+    }
+
+    private String insert(int i, String s, int h) {
+        table[i] = s;
+        hashes[i] = h;
+        if (++size * 2 > table.length)
+            grow();
+        return s;
+    }
+
+    private static boolean matches(String s, char[] buf, int start, int len) {
+        if (s.length() != len)
+            return false;
+        for (int i = 0; i < len; i++)
+            if (s.charAt(i) != buf[start + i])
+                return false;
+        return true;
+    }
+
+    private void grow() {
+        final var oldTable = table;
+        final var oldHashes = hashes;
+        table = new String[oldTable.length * 2];
+        hashes = new int[oldTable.length * 2];
+        final int mask = table.length - 1;
+        for (int k = 0; k < oldTable.length; k++) {
+            if (oldTable[k] == null)
+                continue;
+            int i = oldHashes[k] & mask;
+            while (table[i] != null)
+                i = (i + 1) & mask;
+            table[i] = oldTable[k];
+            hashes[i] = oldHashes[k];
+        }
+    }
+}
@@ -4,96 +4,169 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import jlite.Env;
 import jlite.TypeIndexer;
+import jlite.fp.MultiError;
 import jlite.fp.Result;
 import jlite.parser.Ast;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Records the type of every expression into a {@link TypeTable}. Each
+ * {@code on*} method returns the type it recorded, or null after an error;
+ * errors go to a separate list, and a node whose operand already failed
+ * fails silently so one mistake is reported once.
+ */
 public class Checker {
-    public static Result<Map<Ast.Node, String>> check(Ast.Program p) {
+    private final TypeTable types;
+    private final List<Error> errors = new ArrayList<>();
+    // params and locals of the current method whose type is unknown
+    private final Set<String> untyped = new HashSet<>();
+
+    Checker(TypeTable types) {
+        this.types = types;
+    }
+
+    public static Result<TypeTable> check(Ast.Program p) {
         Env e = TypeIndexer.index(p);
-        return onProgram(e, p);
+        return check(e, p, m -> true);
+    }
+
+    // only checks the bodies of the methods `include` accepts
+    public static Result<TypeTable> check(Env e, Ast.Program p, Predicate<Ast.Method> include) {
+        return onProgram(e, p, include);
+    }
+
+    Result<TypeTable> result() {
+        if (errors.isEmpty())
+            return Result.of(types);
+        return Result.err(errors.size() == 1 ? errors.get(0) : MultiError.join(errors));
+    }
+
+    private <T> T fail(Error err) {
+        errors.add(err);
+        return null;
     }
 
-    static Result<Map<Ast.Node, String>> onProgram(Env e, Ast.Program p) {
+    private static boolean is(Env.Type t, int... ids) {
+        for (int id : ids)
+            if (t.id == id && t.isClass())
+                return true;
+        return false;
+    }
+
+    void merge(Checker other) {
+        errors.addAll(other.errors);
+    }
+
+    // method bodies only read the Env, so each one is checked by its own
+    // Checker on the fork-join pool; they share the table, whose slots they
+    // never have in common, and merging errors in source order keeps their
+    // order independent of scheduling
+    static Result<TypeTable> onProgram(Env e, Ast.Program p, Predicate<Ast.Method> include) {
         final var classes = new ImmutableList.Builder<Ast.Cls>()
                 .add(p.main)
                 .addAll(p.classes)
                 .build();
 
-        return classes.stream()
-                .map(c -> onClass(e, c))
-                .reduce(Result.of(ImmutableMap.of()), TypeHint::join);
+        final var types = new TypeTable(e, p);
+        final var checked = classes.stream()
+                .flatMap(c -> onClass(e, types, c, include))
+                .collect(Collectors.toList())
+                .parallelStream()
+                .map(Supplier::get)
+                .collect(Collectors.toList());
+
+        final var program = new Checker(types);
+        checked.forEach(program::merge);
+        return program.result();
     }
 
-    static Result<Map<Ast.Node, String>> onClass(Env e, Ast.Cls c) {
-        final var env = e.update(
-                ((Env.ClassType) e.types.get(c.name)).fields,
-                ((Env.ClassType) e.types.get(c.name)).methods
-        );
+    static Stream<Supplier<Checker>> onClass(Env e, TypeTable types, Ast.Cls c, Predicate<Ast.Method> include) {
+        final var cls = e.types.get(c.name);
+        final var env = e.update(cls.fields, cls.methods);
 
-        return c.methods.stream()
-                .map(m -> onMethod(env, c, m))
-                .reduce(Result.of(ImmutableMap.of()), TypeHint::join);
+        return c.methods.stream().filter(include).map(m -> () -> {
+            final var checker = new Checker(types);
+            checker.onMethod(env, c, m);
+            return checker;
+        });
     }
 
-    static Result<Map<Ast.Node, String>> onMethod(Env e, Ast.Cls c, Ast.Method m) {
+    void onMethod(Env e, Ast.Cls c, Ast.Method m) {
         final var env = e.update(
                 new ImmutableMap.Builder<String, Env.ClassType>()
-                        .put(Map.entry("this", (Env.ClassType) e.types.get(c.name)))
+                        .put(Map.entry("this", e.types.get(c.name)))
                         .putAll(m.params.stream()
-                                .map(p -> Map.entry(p.id.id, (Env.ClassType) e.types.get(p.type.name)))
+                                .filter(p -> declared(e, p.id.id, p.type.name))
+                                .map(p -> Map.entry(p.id.id, e.types.get(p.type.name)))
                                 .collect(Collectors.toList())
                         )
                         .build(),
                 ImmutableMap.of()
         );
-        return onBody(env, m.body);
+        onBody(env, m.body);
     }
 
-    static Result<Map<Ast.Node, String>> onBody(Env e, Ast.Body b) {
-        final var env = e.update(
+    void onBody(Env e, Ast.Body b) {
+        final var env = e.block(
                 new ImmutableMap.Builder<String, Env.ClassType>()
                         .putAll(b.vars.stream()
-                                .map(v -> Map.entry(v.id.id, (Env.ClassType) e.types.get(v.type.name)))
+                                .filter(v -> declared(e, v.id.id, v.type.name))
+                                .map(v -> Map.entry(v.id.id, e.types.get(v.type.name)))
                                 .collect(Collectors.toList())
                         )
-                        .build(),
-                ImmutableMap.of()
+                        .build()
         );
 
-        return b.stmts.stream()
-                .map(s -> onStmt(env, s))
-                .reduce(Result.of(ImmutableMap.of()), TypeHint::join);
+        b.stmts.forEach(s -> onStmt(env, s));
     }
 
-    static Result<Map<Ast.Node, String>> onId(Env e, Ast.Id id) {
-        final var c = e.vars.get(id.id);
-        final var m = e.methods.get(id.id);
-        return Result.of(ImmutableMap.of(id, (c != null ? c : m).name));
+    // whether `type` names a class; a param or local of an unknown type
+    // is reported here and left unbound, and its uses fail silently
+    private boolean declared(Env e, String id, String type) {
+        if (e.types.get(type) != null)
+            return true;
+        untyped.add(id);
+        fail(new Error(String.format("unknown type %s", type)));
+        return false;
     }
 
-    static Result<Map<Ast.Node, String>> onStmt(Env e, Ast.Stmt s) {
+    Env.Type onId(Env e, Ast.Id id) {
+        final Env.Type c = e.var(id.id);
+        final Env.Type m = e.method(id.id);
+        if (c == null && m == null)
+            return untyped.contains(id.id) ? null : fail(new Error(String.format("unknown identifier %s", id.id)));
+        return types.put(id, c != null ? c : m);
+    }
+
+    void onStmt(Env e, Ast.Stmt s) {
         if (s instanceof Ast.Expr)
-            return onExpr(e, (Ast.Expr) s);
-        if (s instanceof Ast.While)
-            return onWhile(e, (Ast.While) s);
-        if (s instanceof Ast.If)
-            return onIf(e, (Ast.If) s);
-        if (s instanceof Ast.Assignment)
-            return onAssignment(e, (Ast.Assignment) s);
-        if (s instanceof Ast.FieldAssignment)
-            return onFieldAssignment(e, (Ast.FieldAssignment) s);
-        if (s instanceof Ast.Return)
-            return onReturn(e, (Ast.Return) s);
-        if (s instanceof Ast.Syscall)
-            return onSyscall(e, (Ast.Syscall) s);
-        return Result.err(new Error(String.format("Can't resolve %s", s)));
+            onExpr(e, (Ast.Expr) s);
+        else if (s instanceof Ast.While)
+            onWhile(e, (Ast.While) s);
+        else if (s instanceof Ast.If)
+            onIf(e, (Ast.If) s);
+        else if (s instanceof Ast.Assignment)
+            onAssignment(e, (Ast.Assignment) s);
+        else if (s instanceof Ast.FieldAssignment)
+            onFieldAssignment(e, (Ast.FieldAssignment) s);
+        else if (s instanceof Ast.Return)
+            onReturn(e, (Ast.Return) s);
+        else if (s instanceof Ast.Syscall)
+            onSyscall(e, (Ast.Syscall) s);
+        else
+            fail(new Error(String.format("Can't resolve %s", s)));
     }
 
-    static Result<Map<Ast.Node, String>> onExpr(Env e, Ast.Expr ex) {
+    Env.Type onExpr(Env e, Ast.Expr ex) {
         if (ex instanceof Ast.Lit)
             return onLit(e, (Ast.Lit) ex);
         if (ex instanceof Ast.BinOp)
@@ -108,173 +181,171 @@ public class Checker {
             return onCall(e, (Ast.Call) ex);
         if (ex instanceof Ast.Id)
             return onId(e, (Ast.Id) ex);
-        return Result.err(new Error(String.format("Can't resolve %s", ex)));
+        return fail(new Error(String.format("Can't resolve %s", ex)));
     }
 
-    static Result<Map<Ast.Node, String>> onSyscall(Env e, Ast.Syscall c) {
-        if (c.name.equals("readln") && c.args.size() != 1)
-            return Result.err(new Error("readln only accept one parameter"));
-        if (c.name.equals("println") && c.args.size() != 1)
-            return Result.err(new Error("readln only accept one parameter"));
+    void onSyscall(Env e, Ast.Syscall c) {
+        if (c.name.equals("readln") && c.args.size() != 1) {
+            fail(new Error("readln only accept one parameter"));
+            return;
+        }
+        if (c.name.equals("println") && c.args.size() != 1) {
+            fail(new Error("readln only accept one parameter"));
+            return;
+        }
 
-        return c.args.stream()
-                .map(p -> onExpr(e, p))
-                .reduce(Result.of(ImmutableMap.of()), TypeHint::join);
+        c.args.forEach(p -> onExpr(e, p));
     }
 
-    static Result<Map<Ast.Node, String>> onCall(Env e, Ast.Call c) {
-        return onExpr(e, c.callee).then(r -> {
-            final var callEnv = onExpr(e, c.callee);
-            final var argsEnv = c.args.stream()
-                    .map(p -> onExpr(e, p))
-                    .reduce(Result.of(ImmutableMap.of()), TypeHint::join);
-            return TypeHint.join(callEnv, argsEnv).then(t -> {
-                final var m = (Env.MethodType) e.types.get(t.get(c.callee));
-                final var expects = m.params.stream()
-                        .map(p -> p.name)
-                        .collect(Collectors.joining(", "));
-                final var args = c.args.stream()
-                        .map(a -> e.types.get(t.get(a)).name)
-                        .collect(Collectors.joining(", "));
-                if (!expects.equals(args))
-                    return Result.err(new Error(String.format("expects (%s) got (%s) as args", expects, args)));
-                return TypeHint.join(Result.of(t), Result.of(ImmutableMap.of(c, m.ret.name)));
-            });
-        });
+    Env.Type onCall(Env e, Ast.Call c) {
+        final var callee = onExpr(e, c.callee);
+        if (callee == null)
+            return null;
+        final var args = new ArrayList<Env.Type>(c.args.size());
+        for (Ast.Expr a : c.args)
+            args.add(onExpr(e, a));
+        if (args.contains(null))
+            return null;
+
+        if (callee.isClass())
+            return fail(new Error(String.format("%s is not a method", describe(c.callee, callee))));
+        final var m = (Env.MethodType) callee;
+        if (!m.params.equals(args)) {
+            final var expects = m.params.stream()
+                    .map(p -> p.name)
+                    .collect(Collectors.joining(", "));
+            final var got = args.stream()
+                    .map(a -> a.name)
+                    .collect(Collectors.joining(", "));
+            return fail(new Error(String.format("expects (%s) got (%s) as args", expects, got)));
+        }
+        return types.put(c, m.ret);
     }
 
-    static Result<Map<Ast.Node, String>> onLit(Env e, Ast.Lit l) {
+    // the name to report for an expression: the member or variable it names, if any
+    static String describe(Ast.Expr x, Env.Type t) {
+        if (x instanceof Ast.Id)
+            return ((Ast.Id) x).id;
+        if (x instanceof Ast.Access)
+            return ((Ast.Access) x).id.id;
+        return t.name;
+    }
+
+    Env.Type onLit(Env e, Ast.Lit l) {
         if (l.v instanceof Integer)
-            return Result.of(ImmutableMap.of(l, "Int"));
+            return types.put(l, e.classes.get(Env.INT));
         if (l.v instanceof Boolean)
-            return Result.of(ImmutableMap.of(l, "Bool"));
+            return types.put(l, e.classes.get(Env.BOOL));
         if (l.v instanceof String)
-            return Result.of(ImmutableMap.of(l, "String"));
-        return Result.err(new Error("should be impossible to happen"));
+            return types.put(l, e.classes.get(Env.STRING));
+        return fail(new Error("should be impossible to happen"));
     }
 
-    static Result<Map<Ast.Node, String>> onBinOp(Env e, Ast.BinOp o) {
-        final var joined = TypeHint.join(onExpr(e, o.l), onExpr(e, o.r));
-        if (joined.isErr())
-            return joined;
-        final var ts = joined.v;
+    Env.Type onBinOp(Env e, Ast.BinOp o) {
+        final var l = onExpr(e, o.l);
+        final var r = onExpr(e, o.r);
+        if (l == null || r == null)
+            return null;
+        final var bool = e.classes.get(Env.BOOL);
 
         if (List.of("+").contains(o.op)) {
-            if (!ts.get(o.l).equals(ts.get(o.r)) || !List.of("Int", "String").contains(ts.get(o.l)))
-                return Result.err(new Error("type mismatch on BinOp"));
-            return TypeHint.join(joined, Result.of(ImmutableMap.of(o, ts.get(o.l))));
+            if (l != r || !is(l, Env.INT, Env.STRING))
+                return fail(new Error("type mismatch on BinOp"));
+            return types.put(o, l);
         }
         if (List.of("-", "*", "/").contains(o.op)) {
-            if (!ts.get(o.l).equals("Int") || !ts.get(o.r).equals("Int"))
-                return Result.err(new Error("type mismatch on BinOp"));
-            return TypeHint.join(joined, Result.of(ImmutableMap.of(o, ts.get(o.l))));
+            if (!is(l, Env.INT) || !is(r, Env.INT))
+                return fail(new Error("type mismatch on BinOp"));
+            return types.put(o, l);
         }
         if (List.of(">", ">=", "<", "<=").contains(o.op)) {
-            if (!ts.get(o.l).equals("Int") || !ts.get(o.r).equals("Int"))
-                return Result.err(new Error("type mismatch on BinOp"));
-            return TypeHint.join(joined, Result.of(ImmutableMap.of(o, "Bool")));
+            if (!is(l, Env.INT) || !is(r, Env.INT))
+                return fail(new Error("type mismatch on BinOp"));
+            return types.put(o, bool);
         }
         if (List.of("==", "!=").contains(o.op)) {
-            if (!ts.get(o.l).equals(ts.get(o.r)) || !List.of("Int", "Bool", "String").contains(ts.get(o.l)))
-                return Result.err(new Error("type mismatch on BinOp"));
-            return TypeHint.join(joined, Result.of(ImmutableMap.of(o, "Bool")));
+            if (l != r || !is(l, Env.INT, Env.BOOL, Env.STRING))
+                return fail(new Error("type mismatch on BinOp"));
+            return types.put(o, bool);
         }
         if (List.of("||", "&&").contains(o.op)) {
-            if (!ts.get(o.l).equals("Bool") || !ts.get(o.r).equals("Bool"))
-                return Result.err(new Error("type mismatch on BinOp"));
-            return TypeHint.join(joined, Result.of(ImmutableMap.of(o, "Bool")));
+            if (!is(l, Env.BOOL) || !is(r, Env.BOOL))
+                return fail(new Error("type mismatch on BinOp"));
+            return types.put(o, bool);
         }
-        return Result.err(new Error("should be impossible to happen"));
+        return fail(new Error("should be impossible to happen"));
     }
 
-    static Result<Map<Ast.Node, String>> onUnOp(Env e, Ast.UnOp o) {
-        return onExpr(e, o.e).then(ts -> {
-            if (ts.get(o.e).equals("Int") && o.op.equals("-"))
-                return TypeHint.join(Result.of(ts), Result.of(ImmutableMap.of(o, "Int")));
-            if (ts.get(o.e).equals("Bool") && o.op.equals("!"))
-                return TypeHint.join(Result.of(ts), Result.of(ImmutableMap.of(o, "Bool")));
-            return Result.err(new Error());
-        });
+    Env.Type onUnOp(Env e, Ast.UnOp o) {
+        final var t = onExpr(e, o.e);
+        if (t == null)
+            return null;
+        if (is(t, Env.INT) && o.op.equals("-"))
+            return types.put(o, t);
+        if (is(t, Env.BOOL) && o.op.equals("!"))
+            return types.put(o, t);
+        return fail(new Error());
     }
 
-    static Result<Map<Ast.Node, String>> onNew(Env e, Ast.New o) {
-        if (!e.types.containsKey(o.name))
-            return Result.err(new Error("the class name is not recognized"));
-        return Result.of(ImmutableMap.of(o, o.name));
+    Env.Type onNew(Env e, Ast.New o) {
+        final var c = e.types.get(o.name);
+        if (c == null)
+            return fail(new Error("the class name is not recognized"));
+        return types.put(o, c);
     }
 
-    static Result<Map<Ast.Node, String>> onAccess(Env e, Ast.Access a) {
-        return onExpr(e, a.e).then(r -> {
-            final var c = ((Env.ClassType) e.types.get(r.get(a.e)))
-                    .fields.get(a.id.id);
-            final var m = ((Env.ClassType) e.types.get(r.get(a.e)))
-                    .methods.get(a.id.id);
-            final var t = c != null ? c : m;
-            return TypeHint.join(
-                    Result.of(r),
-                    Result.of(ImmutableMap.of(a, t.name))
-            );
-        });
+    Env.Type onAccess(Env e, Ast.Access a) {
+        final var r = onExpr(e, a.e);
+        if (r == null)
+            return null;
+        if (!r.isClass())
+            return fail(new Error(String.format("%s is a method, not an object", describe(a.e, r))));
+        final Env.Type c = ((Env.ClassType) r).fields.get(a.id.id);
+        final Env.Type m = ((Env.ClassType) r).methods.get(a.id.id);
+        if (c == null && m == null)
+            return fail(new Error(String.format("%s has no member %s", r.name, a.id.id)));
+        return types.put(a, c != null ? c : m);
     }
 
-    static Result<Map<Ast.Node, String>> onWhile(Env e, Ast.While w) {
-        final var condResult = onExpr(e, w.cond);
-        if (condResult.isErr())
-            return condResult;
-
-        return w.block.stmts.stream()
-                .map(s -> onStmt(e, s))
-                .reduce(Result.of(ImmutableMap.of()), TypeHint::join);
+    void onWhile(Env e, Ast.While w) {
+        onExpr(e, w.cond);
+        w.block.stmts.forEach(s -> onStmt(e, s));
     }
 
-    static Result<Map<Ast.Node, String>> onIf(Env e, Ast.If b) {
-        final var condResult = onExpr(e, b.cond);
-        if (condResult.isErr())
-            return condResult;
-
-        return onExpr(e, b.cond)
-                .then(r -> TypeHint.join(
-                        Result.of(r),
-                        b.cons.stmts.stream()
-                                .map(s -> onStmt(e, s))
-                                .reduce(Result.of(ImmutableMap.of()), TypeHint::join)
-                ))
-                .then(r -> TypeHint.join(
-                        Result.of(r),
-                        b.alt.stmts.stream()
-                                .map(s -> onStmt(e, s))
-                                .reduce(Result.of(ImmutableMap.of()), TypeHint::join)
-
-                ));
+    void onIf(Env e, Ast.If b) {
+        onExpr(e, b.cond);
+        b.cons.stmts.forEach(s -> onStmt(e, s));
+        b.alt.stmts.forEach(s -> onStmt(e, s));
     }
 
-    static Result<Map<Ast.Node, String>> onAssignment(Env e, Ast.Assignment b) {
-        return TypeHint.join(onExpr(e, b.lhs), onExpr(e, b.rhs))
-                .then(ts -> {
-                    if (!ts.get(b.lhs).equals(ts.get(b.rhs)))
-                        return Result.err(new Error("type mismatch on assignment"));
-                    return Result.of(ts);
-                });
+    void onAssignment(Env e, Ast.Assignment b) {
+        final var l = onExpr(e, b.lhs);
+        final var r = onExpr(e, b.rhs);
+        if (l != null && r != null && l != r)
+            fail(new Error("type mismatch on assignment"));
     }
 
-    static Result<Map<Ast.Node, String>> onFieldAssignment(Env e, Ast.FieldAssignment b) {
-        return TypeHint.join(onExpr(e, b.lhs), onExpr(e, b.rhs))
-                .then(ts -> {
-                    final var lhs = ((Env.ClassType) e.types.get(ts.get(b.lhs))).fields.get(b.id.id).name;
-                    final var rhs = ts.get(b.rhs);
-                    if (!lhs.equals(rhs))
-                        return Result.err(new Error("type mismatch on field assignment"));
-                    return TypeHint.join(Result.of(ts), Result.of(ImmutableMap.of(b, lhs)));
-                });
+    void onFieldAssignment(Env e, Ast.FieldAssignment b) {
+        final var obj = onExpr(e, b.lhs);
+        final var rhs = onExpr(e, b.rhs);
+        if (obj == null || rhs == null)
+            return;
+        if (!obj.isClass()) {
+            fail(new Error(String.format("%s is a method, not an object", describe(b.lhs, obj))));
+            return;
+        }
+        final var lhs = ((Env.ClassType) obj).fields.get(b.id.id);
+        if (lhs != rhs)
+            fail(new Error("type mismatch on field assignment"));
+        else
+            types.put(b, lhs);
     }
 
-    static Result<Map<Ast.Node, String>> onReturn(Env e, Ast.Return r) {
-        if (r.expr == null) {
-            return Result.of(ImmutableMap.of());
-        }
-        return onExpr(e, r.expr).then(ts -> TypeHint.join(
-                Result.of(ts),
-                Result.of(ImmutableMap.of(r, ts.get(r.expr))))
-        );
+    void onReturn(Env e, Ast.Return r) {
+        if (r.expr == null)
+            return;
+        final var t = onExpr(e, r.expr);
+        if (t != null)
+            types.put(r, t);
     }
-}
\ No newline at end of file
+}
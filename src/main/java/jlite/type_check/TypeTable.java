@@ -0,0 +1,43 @@
+package jlite.type_check;
+
+import jlite.Env;
+import jlite.parser.Ast;
+
+/**
+ * The type of every checked expression node, indexed by node id. A
+ * compilation has one table: each checker task writes only the ids of its
+ * own method's nodes, which are disjoint, and IRGen reads the types back
+ * together with the {@link Env} whose ids and slots they refer to.
+ */
+public class TypeTable {
+    public final Env env;
+    private final Env.Type[] types;
+
+    public TypeTable(Env env, Ast.Program p) {
+        this.env = env;
+        this.types = new Env.Type[p.size];
+    }
+
+    public <T extends Env.Type> T put(Ast.Node n, T type) {
+        types[n.nid()] = type;
+        return type;
+    }
+
+    public Env.Type get(Ast.Node n) {
+        return types[n.nid()];
+    }
+
+    // the type's name as it appears in the IR, or null if unknown
+    public String name(Ast.Node n) {
+        final var t = types[n.nid()];
+        return t == null ? null : t.name;
+    }
+
+    public int size() {
+        int n = 0;
+        for (Env.Type t : types)
+            if (t != null)
+                n++;
+        return n;
+    }
+}